@@ -124,6 +124,14 @@ public class BIG {
 		return (long)(w[NLEN-1]>>((8*CONFIG_BIG.MODBYTES)%CONFIG_BIG.BASEBITS));  
 	}
 
+/* true if all digits are already in [0,2^BASEBITS) */
+	boolean isnormed() {
+		int d=0;
+		for (int i=0;i<NLEN;i++)
+			d|=w[i];
+		return (d>>>CONFIG_BIG.BASEBITS)==0;
+	}
+
 /* return number of bits */
 	public int nbits() {
 		BIG t=new BIG(this);
@@ -169,28 +177,25 @@ public class BIG {
 		return s;
 	}
 
-	public static int[] muladd(int x,int y,int c,int r)
+/* set r[i]=low part of x*y+c+r[i], and return high part. No allocation */
+
+	public static int muladd(int x,int y,int c,int[] r,int i)
 	{
-		int[] tb=new int[2];
-		long prod=(long)x*y+c+r;	
-		tb[1]=(int)prod&BMASK;
-		tb[0]=(int)(prod>>CONFIG_BIG.BASEBITS);
-		return tb;
+		long prod=(long)x*y+c+r[i];	
+		r[i]=(int)prod&BMASK;
+		return (int)(prod>>CONFIG_BIG.BASEBITS);
 	}
 
 /* this*=x, where x is >NEXCESS */
 	public int pmul(int c)
 	{
 		int ak,carry=0;
-		int[] cr=new int[2];
 
 		for (int i=0;i<NLEN;i++)
 		{
 			ak=w[i];
 			w[i]=0;
-			cr=muladd(ak,c,carry,w[i]);
-			carry=cr[0];
-			w[i]=cr[1];
+			carry=muladd(ak,c,carry,w,i);
 		}
 		return carry;
 	}
@@ -199,14 +204,9 @@ public class BIG {
 	public DBIG pxmul(int c)
 	{
 		DBIG m=new DBIG(0);	
-		int[] cr=new int[2];	
 		int carry=0;
 		for (int j=0;j<NLEN;j++)
-		{
-			cr=muladd(w[j],c,carry,m.w[j]);
-			carry=cr[0];
-			m.w[j]=cr[1];
-		}
+			carry=muladd(w[j],c,carry,m.w,j);
 		m.w[NLEN]=carry;		
 		return m;
 	}
@@ -231,103 +231,204 @@ public class BIG {
 	{
 		int carry;
 		BIG c=new BIG(0);
-		int[] cr=new int[2];			
 		for (int i=0;i<NLEN;i++)
 		{
 			carry=0;
 			for (int j=0;j<NLEN;j++)
 			{
 				if (i+j<NLEN) 
-				{
-					cr=muladd(a.w[i],b.w[j],carry,c.w[i+j]);
-					carry=cr[0];
-					c.w[i+j]=cr[1];
-				}
+					carry=muladd(a.w[i],b.w[j],carry,c.w,i+j);
 			}
 		}
 		return c;
 	}
 
-/* return a*b as DBIG */
-/* Inputs must be normed */
-	public static DBIG mul(BIG a,BIG b)
+/* r[rp..rp+2n-1]=x[xp..xp+n-1]*y[yp..yp+n-1]. Limbs may be signed, but must be less than 2^BASEBITS in magnitude */
+	private static void rmul(int[] r,int rp,int[] x,int xp,int[] y,int yp,int n)
 	{
 		long t,co;
-		DBIG c=new DBIG(0);
 
-		long[] d=new long[NLEN];
+		long[] d=new long[n];
 		long s;
 		int i,k;
 
-		for (i=0;i<NLEN;i++)
-			d[i]=(long)a.w[i]*b.w[i];
+		for (i=0;i<n;i++)
+			d[i]=(long)x[xp+i]*y[yp+i];
 
 		s=d[0];
-		t=s; c.w[0]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+		t=s; r[rp]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 
-		for (k=1;k<NLEN;k++)
+		for (k=1;k<n;k++)
 		{
-			s+=d[k]; t=co+s; for (i=k;i>=1+k/2;i--) t+=(long)(a.w[i]-a.w[k-i])*(b.w[k-i]-b.w[i]); c.w[k]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+			s+=d[k]; t=co+s; for (i=k;i>=1+k/2;i--) t+=(long)(x[xp+i]-x[xp+k-i])*(y[yp+k-i]-y[yp+i]); r[rp+k]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 		}
-		for (k=NLEN;k<2*NLEN-1;k++)
+		for (k=n;k<2*n-1;k++)
 		{
-			s-=d[k-NLEN]; t=co+s; for (i=NLEN-1;i>=1+k/2;i--) t+=(long)(a.w[i]-a.w[k-i])*(b.w[k-i]-b.w[i]); c.w[k]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+			s-=d[k-n]; t=co+s; for (i=n-1;i>=1+k/2;i--) t+=(long)(x[xp+i]-x[xp+k-i])*(y[yp+k-i]-y[yp+i]); r[rp+k]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 		}
-		c.w[2*NLEN-1]=(int)co;
-
-		return c;
+		r[rp+2*n-1]=(int)co;
 	}
 
-/* return a^2 as DBIG */
-/* Input must be normed */
-	public static DBIG sqr(BIG a)
+/* r[rp..rp+2n-1]=x[xp..xp+n-1]^2, as above, n>1 */
+	private static void rsqr(int[] r,int rp,int[] x,int xp,int n)
 	{
-		int i,j,last;
+		int i,j;
 		long t,co;
-		DBIG c=new DBIG(0);
 
-		t=(long)a.w[0]*a.w[0]; 
-		c.w[0]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+		t=(long)x[xp]*x[xp]; 
+		r[rp]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 
-		for (j=1;j<NLEN-1; )
+		for (j=1;j<n-1; )
 		{
-			t=(long)a.w[j]*a.w[0]; for (i=1; i<(j+1)/2; i++) {t+=(long)a.w[j-i]*a.w[i];} t+=t;  t+=co; 
-			c.w[j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+			t=(long)x[xp+j]*x[xp]; for (i=1; i<(j+1)/2; i++) {t+=(long)x[xp+j-i]*x[xp+i];} t+=t;  t+=co; 
+			r[rp+j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 			j++;
-			t=(long)a.w[j]*a.w[0]; for (i=1; i<(j+1)/2; i++) {t+=(long)a.w[j-i]*a.w[i];} t+=t; t+=co; t+=(long)a.w[j/2]*a.w[j/2]; 
-			c.w[j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+			t=(long)x[xp+j]*x[xp]; for (i=1; i<(j+1)/2; i++) {t+=(long)x[xp+j-i]*x[xp+i];} t+=t; t+=co; t+=(long)x[xp+j/2]*x[xp+j/2]; 
+			r[rp+j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 			j++;
 		}
 
-		for (j=NLEN-1+NLEN%2;j<DNLEN-3; )
+		for (j=n-1+n%2;j<2*n-3; )
 		{
-			t=(long)a.w[NLEN-1]*a.w[j-NLEN+1]; for (i=j-NLEN+2; i<(j+1)/2; i++) {t+=(long)a.w[j-i]*a.w[i];} t+=t; t+=co; 
-			c.w[j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+			t=(long)x[xp+n-1]*x[xp+j-n+1]; for (i=j-n+2; i<(j+1)/2; i++) {t+=(long)x[xp+j-i]*x[xp+i];} t+=t; t+=co; 
+			r[rp+j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 			j++;
-			t=(long)a.w[NLEN-1]*a.w[j-NLEN+1]; for (i=j-NLEN+2; i<(j+1)/2; i++) {t+=(long)a.w[j-i]*a.w[i];} t+=t; t+=co; t+=(long)a.w[j/2]*a.w[j/2]; 
-			c.w[j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+			t=(long)x[xp+n-1]*x[xp+j-n+1]; for (i=j-n+2; i<(j+1)/2; i++) {t+=(long)x[xp+j-i]*x[xp+i];} t+=t; t+=co; t+=(long)x[xp+j/2]*x[xp+j/2]; 
+			r[rp+j]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 			j++;
 		}
 
-		t=(long)a.w[NLEN-2]*a.w[NLEN-1];
+		t=(long)x[xp+n-2]*x[xp+n-1];
 		t+=t; t+=co;
-		c.w[DNLEN-3]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+		r[rp+2*n-3]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
 	
-		t=(long)a.w[NLEN-1]*a.w[NLEN-1]+co; 
-		c.w[DNLEN-2]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
-		c.w[DNLEN-1]=(int)co;
+		t=(long)x[xp+n-1]*x[xp+n-1]+co; 
+		r[rp+2*n-2]=(int)t&BMASK; co=t>>CONFIG_BIG.BASEBITS;
+		r[rp+2*n-1]=(int)co;
+	}
+
+/* propagate carries through r[rp..rp+n-1], leaving any excess in the top word */
+	private static void rnorm(int[] r,int rp,int n)
+	{
+		int t=0;
+		for (int i=0;i<n-1;i++)
+		{
+			t+=r[rp+i]; r[rp+i]=t&BMASK; t>>=CONFIG_BIG.BASEBITS;
+		}
+		r[rp+n-1]+=t;
+	}
+
+/* r=x0-x1 over n=len(x1) limbs, where x=x0+x1.2^(h.BASEBITS) and len(x0)=h<=n */
+	private static int[] rdiff(int[] x,int xp,int h,int n)
+	{
+		int[] d=new int[n];
+		for (int i=0;i<n;i++)
+			d[i]=-x[xp+h+i];
+		for (int i=0;i<h;i++)
+			d[i]+=x[xp+i];
+		rnorm(d,0,n);
+		return d;
+	}
+
+/* Karatsuba - split x and y into low h and high n-h limbs, and use */
+/* x0.y1+x1.y0 = x0.y0+x1.y1-(x0-x1)(y0-y1) to save one sub-product */
+	private static void karmul(int[] r,int rp,int[] x,int xp,int[] y,int yp,int n,int k)
+	{
+		int i,h=n/2,u=n-h;
+		if (n<k || n<4)
+		{
+			rmul(r,rp,x,xp,y,yp,n);
+			return;
+		}
+		int[] dx=rdiff(x,xp,h,u);
+		int[] dy=rdiff(y,yp,h,u);
+		int[] m=new int[2*u];
+
+		karmul(r,rp,x,xp,y,yp,h,k);
+		karmul(r,rp+2*h,x,xp+h,y,yp+h,u,k);
+		karmul(m,0,dx,0,dy,0,u,k);
+
+		for (i=0;i<2*u;i++) m[i]=r[rp+2*h+i]-m[i];
+		for (i=0;i<2*h;i++) m[i]+=r[rp+i];
+		for (i=0;i<2*u;i++) r[rp+h+i]+=m[i];
+		rnorm(r,rp,2*n);
+	}
+
+/* Karatsuba squaring - 2.x0.x1 = x0^2+x1^2-(x0-x1)^2 */
+	private static void karsqr(int[] r,int rp,int[] x,int xp,int n,int k)
+	{
+		int i,h=n/2,u=n-h;
+		if (n<k || n<4)
+		{
+			rsqr(r,rp,x,xp,n);
+			return;
+		}
+		int[] dx=rdiff(x,xp,h,u);
+		int[] m=new int[2*u];
 
+		karsqr(r,rp,x,xp,h,k);
+		karsqr(r,rp+2*h,x,xp+h,u,k);
+		karsqr(m,0,dx,0,u,k);
+
+		for (i=0;i<2*u;i++) m[i]=r[rp+2*h+i]-m[i];
+		for (i=0;i<2*h;i++) m[i]+=r[rp+i];
+		for (i=0;i<2*u;i++) r[rp+h+i]+=m[i];
+		rnorm(r,rp,2*n);
+	}
+
+/* c=a*b, where c is a DBIG */
+/* Inputs must be normed */
+	public static void mul(DBIG c,BIG a,BIG b)
+	{
+		mul(c,a,b,CONFIG_BIG.KARATSUBA);
+	}
+
+/* as above, but with Karatsuba from k limbs - for timing the crossover */
+/* The half products are only bounded for normalised inputs */
+	static void mul(DBIG c,BIG a,BIG b,int k)
+	{
+		if (NLEN>=k && a.isnormed() && b.isnormed()) karmul(c.w,0,a.w,0,b.w,0,NLEN,k);
+		else rmul(c.w,0,a.w,0,b.w,0,NLEN);
+	}
+
+/* return a*b as DBIG */
+/* Inputs must be normed */
+	public static DBIG mul(BIG a,BIG b)
+	{
+		DBIG c=new DBIG(0);
+		mul(c,a,b);
 		return c;
 	}
 
-	static BIG monty(BIG m,int MC,DBIG d)
+/* c=a^2, where c is a DBIG */
+/* Input must be normed */
+	public static void sqr(DBIG c,BIG a)
+	{
+		sqr(c,a,CONFIG_BIG.KARATSUBA);
+	}
+
+	static void sqr(DBIG c,BIG a,int k)
+	{
+		if (NLEN>=k && a.isnormed()) karsqr(c.w,0,a.w,0,NLEN,k);
+		else rsqr(c.w,0,a.w,0,NLEN);
+	}
+
+/* return a^2 as DBIG */
+/* Input must be normed */
+	public static DBIG sqr(BIG a)
+	{
+		DBIG c=new DBIG(0);
+		sqr(c,a);
+		return c;
+	}
+
+/* b=d mod m, Montgomery reduction */
+	static void monty(BIG b,BIG m,int MC,DBIG d)
 	{
-		BIG b;
 		long t,c,s;
 		int i,k;
 		long[] dd=new long[NLEN];
 		int[] v=new int[NLEN];
-		b=new BIG(0);
 
 		t=d.w[0]; v[0]=((int)t*MC)&BMASK; t+=(long)v[0]*m.w[0]; c=(t>>CONFIG_BIG.BASEBITS)+d.w[1]; s=0;
 
@@ -345,6 +446,12 @@ public class BIG {
 			b.w[k-NLEN]=(int)t&BMASK; c=(t>>CONFIG_BIG.BASEBITS)+d.w[k+1]; s-=dd[k-NLEN+1];
 		}
 		b.w[NLEN-1]=(int)c&BMASK;	
+	}
+
+	static BIG monty(BIG m,int MC,DBIG d)
+	{
+		BIG b=new BIG(0);
+		monty(b,m,MC,d);
 		return b;		
 	}
 
@@ -862,10 +969,15 @@ public class BIG {
 		else return -1;
 	}
 
-/* this=1/this mod p. Binary method */
+/* this=1/this mod p. Constant time divsteps if so configured, else binary method */
 	public void invmodp(BIG p)
 	{
 		mod(p);
+		if (CONFIG_BIG.SAFEGCD)
+		{
+			new SAFEGCD(p).inverse(this);
+			return;
+		}
 		BIG u=new BIG(this);
 		BIG v=new BIG(p);
 		BIG x1=new BIG(1);
@@ -32,6 +32,8 @@ public class BIG {
 
 	public static final int HBITS=CONFIG_BIG.BASEBITS/2;
 	public static final long HMASK=(((long)1<<HBITS)-1);
+/* unreduced column sums of up to 3*NLEN limb sized terms must fit in a long. Limbs must be normalised */
+	static final boolean DEFER=(3*NLEN<(1<<(63-CONFIG_BIG.BASEBITS)));
 	public static final int NEXCESS = ((int)1<<(CHUNK-CONFIG_BIG.BASEBITS-1));
 	public static final int BIGBITS=(CONFIG_BIG.MODBYTES*8);
 
@@ -123,6 +125,14 @@ public class BIG {
 		return (long)(w[NLEN-1]>>((8*CONFIG_BIG.MODBYTES)%CONFIG_BIG.BASEBITS));  
 	}
 
+/* true if all digits are already in [0,2^CONFIG_BIG.BASEBITS) */
+	boolean isnormed() {
+		long d=0;
+		for (int i=0;i<NLEN;i++)
+			d|=w[i];
+		return (d>>>CONFIG_BIG.BASEBITS)==0;
+	}
+
 /* return number of bits */
 	public int nbits() {
 		BIG t=new BIG(this);
@@ -168,12 +178,11 @@ public class BIG {
 		return s;
 	}
 
-/* set this[i]+=x*y+c, and return high part */
+/* set r[i]=low part of a*b+c+r[i], and return high part. No allocation */
 
-	public static long[] muladd(long a,long b,long c,long r)
+	public static long muladd(long a,long b,long c,long[] r,int i)
 	{
 		long x0,x1,y0,y1;
-		long[] tb=new long[2];
 		x0=a&HMASK;
 		x1=(a>>HBITS);
 		y0=b&HMASK;
@@ -183,31 +192,26 @@ public class BIG {
 		long mid=x0*y1+x1*y0;
 		x0=mid&HMASK;
 		x1=(mid>>HBITS);
-		bot+=x0<<HBITS; bot+=c; bot+=r;
+		bot+=x0<<HBITS; bot+=c; bot+=r[i];
 		top+=x1;
 		long carry=bot>>CONFIG_BIG.BASEBITS;
 		bot&=BMASK;
 		top+=carry;
-		tb[0]=top;
-		tb[1]=bot;
-		return tb;
+		r[i]=bot;
+		return top;
 	}
 
 /* this*=x, where x is >NEXCESS */
 	public long pmul(int c)
 	{
 		long ak,carry=0;
-		long[] cr=new long[2];
 
 		for (int i=0;i<NLEN;i++)
 		{
 			ak=w[i];
 			w[i]=0;
 
-			cr=muladd(ak,(long)c,carry,w[i]);
-			carry=cr[0];
-			w[i]=cr[1];
-
+			carry=muladd(ak,(long)c,carry,w,i);
 		}
 		return carry;
 	}
@@ -216,14 +220,9 @@ public class BIG {
 	public DBIG pxmul(int c)
 	{
 		DBIG m=new DBIG(0);	
-		long[] cr=new long[2];
 		long carry=0;
 		for (int j=0;j<NLEN;j++)
-		{
-			cr=muladd(w[j],(long)c,carry,m.w[j]);
-			carry=cr[0];
-			m.w[j]=cr[1];
-		}
+			carry=muladd(w[j],(long)c,carry,m.w,j);
 		m.w[NLEN]=carry;		
 		return m;
 	}
@@ -247,103 +246,308 @@ public class BIG {
 	public static BIG smul(BIG a,BIG b)
 	{
 		long carry;
-		long[] cr=new long[2];
 		BIG c=new BIG(0);
 		for (int i=0;i<NLEN;i++)
 		{
 			carry=0;
 			for (int j=0;j<NLEN;j++)
 				if (i+j<NLEN)
-				{
-					cr=muladd(a.w[i],b.w[j],carry,c.w[i+j]);
-					carry=cr[0];
-					c.w[i+j]=cr[1];
-				}
+					carry=muladd(a.w[i],b.w[j],carry,c.w,i+j);
 		}
 		return c;
 	}
 
-/* return a*b as DBIG */
-/* Inputs must be normed */
-	public static DBIG mul(BIG a,BIG b)
+/* r[rp..rp+2n-1]=x[xp..xp+n-1]*y[yp..yp+n-1], using muladd - tolerates some excess in the limbs */
+	private static void tmul(long[] r,int rp,long[] x,int xp,long[] y,int yp,int n)
 	{
-		DBIG c=new DBIG(0);
-		long carry;
-		long[] cr=new long[2];
+		long t;
+		int i,j;
 
-		for (int i=0;i<NLEN;i++)
+		for (i=0;i<2*n;i++)
+			r[rp+i]=0;
+
+		for (i=0;i<n;i++)
 		{
-			carry=0;
-			for (int j=0;j<NLEN;j++)
+			t=0;
+			for (j=0;j<n;j++)
+				t=muladd(x[xp+i],y[yp+j],t,r,rp+i+j);
+			r[rp+n+i]=t;
+		}
+	}
+
+/* r[rp..rp+2n-1]=x[xp..xp+n-1]^2, as above */
+	private static void tsqr(long[] r,int rp,long[] x,int xp,int n)
+	{
+		long t;
+		int i,j;
+
+		for (i=0;i<2*n;i++)
+			r[rp+i]=0;
+
+		for (i=0;i<n;i++)
+		{
+			t=0;
+			for (j=i+1;j<n;j++)
+				t=muladd(2*x[xp+i],x[xp+j],t,r,rp+i+j);
+			r[rp+n+i]=t;
+		}
+
+		for (i=0;i<n;i++)
+			r[rp+2*i+1]+=muladd(x[xp+i],x[xp+i],0,r,rp+2*i);
+		rnorm(r,rp,2*n);
+	}
+
+/* r[rp..rp+2n-1]=x[xp..xp+n-1]*y[yp..yp+n-1]. Limbs may be signed, but must be less than 2^BASEBITS in magnitude */
+/* Half-limb products are added into their columns and carries propagated once at the end */
+	private static void rmul(long[] r,int rp,long[] x,int xp,long[] y,int yp,int n)
+	{
+		long mid,x0,x1,y0,y1;
+		int i,j;
+
+		if (!DEFER)
+		{
+			tmul(r,rp,x,xp,y,yp,n);
+			return;
+		}
+
+		for (i=0;i<2*n;i++)
+			r[rp+i]=0;
+
+		for (i=0;i<n;i++)
+		{
+			x0=x[xp+i]&HMASK; x1=x[xp+i]>>HBITS;
+			for (j=0;j<n;j++)
 			{
-				cr=muladd(a.w[i],b.w[j],carry,c.w[i+j]);
-				carry=cr[0];
-				c.w[i+j]=cr[1];
+				y0=y[yp+j]&HMASK; y1=y[yp+j]>>HBITS;
+				mid=x0*y1+x1*y0;
+				r[rp+i+j]+=x0*y0+((mid&HMASK)<<HBITS);
+				r[rp+i+j+1]+=x1*y1+(mid>>HBITS);
 			}
-			c.w[NLEN+i]=carry;
 		}
-
-		return c;
+		rnorm(r,rp,2*n);
 	}
 
-/* return a^2 as DBIG */
-/* Input must be normed */
-	public static DBIG sqr(BIG a)
+/* r[rp..rp+2n-1]=x[xp..xp+n-1]^2, as above */
+/* Cross products are summed once, then doubled and the squares added in the carry pass */
+	private static void rsqr(long[] r,int rp,long[] x,int xp,int n)
 	{
-		DBIG c=new DBIG(0);
-		long carry;
-		long[] cr=new long[2];
+		long mid,x0,x1,y0,y1;
+		int i,j;
 
-		for (int i=0;i<NLEN;i++)
+		if (!DEFER)
 		{
-			carry=0;
-			for (int j=i+1;j<NLEN;j++)
+			tsqr(r,rp,x,xp,n);
+			return;
+		}
+
+		for (i=0;i<2*n;i++)
+			r[rp+i]=0;
+
+		for (i=0;i<n-1;i++)
+		{
+			x0=x[xp+i]&HMASK; x1=x[xp+i]>>HBITS;
+			for (j=i+1;j<n;j++)
 			{
-				cr=muladd(2*a.w[i],a.w[j],carry,c.w[i+j]);
-				carry=cr[0];
-				c.w[i+j]=cr[1];
+				y0=x[xp+j]&HMASK; y1=x[xp+j]>>HBITS;
+				mid=x0*y1+x1*y0;
+				r[rp+i+j]+=x0*y0+((mid&HMASK)<<HBITS);
+				r[rp+i+j+1]+=x1*y1+(mid>>HBITS);
 			}
-			c.w[NLEN+i]=carry;
 		}
 
-		for (int i=0;i<NLEN;i++)
+		rdbl(r,rp,x,xp,n);
+	}
+
+/* carry pass for rsqr - double the cross products and add in the squares */
+/* kept apart so that rsqr stays small enough to be inlined */
+	private static void rdbl(long[] r,int rp,long[] x,int xp,int n)
+	{
+		long t=0,mid,x0,x1;
+		for (int i=0;i<n;i++)
 		{
-			cr=muladd(a.w[i],a.w[i],0,c.w[2*i]);
-			c.w[2*i+1]+=cr[0];
-			c.w[2*i]=cr[1];
+			x0=x[xp+i]&HMASK; x1=x[xp+i]>>HBITS;
+			mid=2*x0*x1;
+			t+=2*r[rp+2*i]+x0*x0+((mid&HMASK)<<HBITS);
+			r[rp+2*i]=t&BMASK; t>>=CONFIG_BIG.BASEBITS;
+			t+=2*r[rp+2*i+1]+x1*x1+(mid>>HBITS);
+			r[rp+2*i+1]=t&BMASK; t>>=CONFIG_BIG.BASEBITS;
 		}
-		c.norm(); 
+		r[rp+2*n-1]+=t<<CONFIG_BIG.BASEBITS;
+	}
+
+/* propagate carries through r[rp..rp+n-1], leaving any excess in the top word */
+	private static void rnorm(long[] r,int rp,int n)
+	{
+		long t=0;
+		for (int i=0;i<n-1;i++)
+		{
+			t+=r[rp+i]; r[rp+i]=t&BMASK; t>>=CONFIG_BIG.BASEBITS;
+		}
+		r[rp+n-1]+=t;
+	}
+
+/* r=x0-x1 over n=len(x1) limbs, where x=x0+x1.2^(h.BASEBITS) and len(x0)=h<=n */
+	private static long[] rdiff(long[] x,int xp,int h,int n)
+	{
+		long[] d=new long[n];
+		for (int i=0;i<n;i++)
+			d[i]=-x[xp+h+i];
+		for (int i=0;i<h;i++)
+			d[i]+=x[xp+i];
+		rnorm(d,0,n);
+		return d;
+	}
+
+/* Karatsuba - split x and y into low h and high n-h limbs, and use */
+/* x0.y1+x1.y0 = x0.y0+x1.y1-(x0-x1)(y0-y1) to save one sub-product */
+	private static void karmul(long[] r,int rp,long[] x,int xp,long[] y,int yp,int n,int k)
+	{
+		int i,h=n/2,u=n-h;
+		if (n<k || n<4)
+		{
+			rmul(r,rp,x,xp,y,yp,n);
+			return;
+		}
+		long[] dx=rdiff(x,xp,h,u);
+		long[] dy=rdiff(y,yp,h,u);
+		long[] m=new long[2*u];
+
+		karmul(r,rp,x,xp,y,yp,h,k);
+		karmul(r,rp+2*h,x,xp+h,y,yp+h,u,k);
+		karmul(m,0,dx,0,dy,0,u,k);
+
+		for (i=0;i<2*u;i++) m[i]=r[rp+2*h+i]-m[i];
+		for (i=0;i<2*h;i++) m[i]+=r[rp+i];
+		for (i=0;i<2*u;i++) r[rp+h+i]+=m[i];
+		rnorm(r,rp,2*n);
+	}
+
+/* Karatsuba squaring - 2.x0.x1 = x0^2+x1^2-(x0-x1)^2 */
+	private static void karsqr(long[] r,int rp,long[] x,int xp,int n,int k)
+	{
+		int i,h=n/2,u=n-h;
+		if (n<k || n<4)
+		{
+			rsqr(r,rp,x,xp,n);
+			return;
+		}
+		long[] dx=rdiff(x,xp,h,u);
+		long[] m=new long[2*u];
+
+		karsqr(r,rp,x,xp,h,k);
+		karsqr(r,rp+2*h,x,xp+h,u,k);
+		karsqr(m,0,dx,0,u,k);
+
+		for (i=0;i<2*u;i++) m[i]=r[rp+2*h+i]-m[i];
+		for (i=0;i<2*h;i++) m[i]+=r[rp+i];
+		for (i=0;i<2*u;i++) r[rp+h+i]+=m[i];
+		rnorm(r,rp,2*n);
+	}
+
+/* c=a*b, where c is a DBIG */
+/* Inputs must be normed */
+	public static void mul(DBIG c,BIG a,BIG b)
+	{
+		mul(c,a,b,CONFIG_BIG.KARATSUBA);
+	}
+
+/* as above, but with Karatsuba from k limbs - for timing the crossover */
+	static void mul(DBIG c,BIG a,BIG b,int k)
+	{
+		if (!a.isnormed() || !b.isnormed()) tmul(c.w,0,a.w,0,b.w,0,NLEN);
+		else if (NLEN<k) rmul(c.w,0,a.w,0,b.w,0,NLEN);
+		else karmul(c.w,0,a.w,0,b.w,0,NLEN,k);
+	}
+
+/* return a*b as DBIG */
+/* Inputs must be normed */
+	public static DBIG mul(BIG a,BIG b)
+	{
+		DBIG c=new DBIG(0);
+		mul(c,a,b);
 		return c;
 	}
 
-	static BIG monty(BIG md,long MC,DBIG d)
+/* c=a^2, where c is a DBIG */
+/* Input must be normed */
+	public static void sqr(DBIG c,BIG a)
 	{
-		BIG b;
-		long m,carry;
-		long[] cr=new long[2];
-		for (int i=0;i<NLEN;i++) 
+		sqr(c,a,CONFIG_BIG.KARATSUBA);
+	}
+
+	static void sqr(DBIG c,BIG a,int k)
+	{
+		if (!a.isnormed()) tsqr(c.w,0,a.w,0,NLEN);
+		else if (NLEN<k) rsqr(c.w,0,a.w,0,NLEN);
+		else karsqr(c.w,0,a.w,0,NLEN,k);
+	}
+
+/* return a^2 as DBIG */
+/* Input must be normed */
+	public static DBIG sqr(BIG a)
+	{
+		DBIG c=new DBIG(0);
+		sqr(c,a);
+		return c;
+	}
+
+/* b=d mod md, Montgomery reduction. d is destroyed */
+/* Only the carry into the next low limb is resolved per step, the rest is deferred */
+	static void monty(BIG b,BIG md,long MC,DBIG d)
+	{
+		long m,t,mid,x0,x1,y0,y1;
+		int i,j;
+
+		if (!DEFER)
 		{
-			if (MC==-1) m=(-d.w[i])&BMASK;
-			else
+			for (i=0;i<NLEN;i++) 
 			{
-				if (MC==1) m=d.w[i];
-				else m=(MC*d.w[i])&BMASK;
+				if (MC==-1) m=(-d.w[i])&BMASK;
+				else
+				{
+					if (MC==1) m=d.w[i];
+					else m=(MC*d.w[i])&BMASK;
+				}
+
+				t=0;
+				for (j=0;j<NLEN;j++)
+					t=muladd(m,md.w[j],t,d.w,i+j);
+				d.w[NLEN+i]+=t;
 			}
 
-			carry=0;
-			for (int j=0;j<NLEN;j++)
+			for (i=0;i<NLEN;i++ )
+				b.w[i]=d.w[NLEN+i];
+			b.norm();
+			return;
+		}
+
+		t=0;
+		for (i=0;i<NLEN;i++)
+		{
+			m=(MC*(d.w[i]+t))&BMASK;
+			x0=m&HMASK; x1=m>>HBITS;
+			for (j=0;j<NLEN;j++)
 			{
-				cr=muladd(m,md.w[j],carry,d.w[i+j]);
-				carry=cr[0];
-				d.w[i+j]=cr[1];
+				y0=md.w[j]&HMASK; y1=md.w[j]>>HBITS;
+				mid=x0*y1+x1*y0;
+				d.w[i+j]+=x0*y0+((mid&HMASK)<<HBITS);
+				d.w[i+j+1]+=x1*y1+(mid>>HBITS);
 			}
-			d.w[NLEN+i]+=carry;
+			t=(d.w[i]+t)>>CONFIG_BIG.BASEBITS;
 		}
 
-		b=new BIG(0);
-		for (int i=0;i<NLEN;i++ )
-			b.w[i]=d.w[NLEN+i];
+		for (i=0;i<NLEN-1;i++)
+		{
+			t+=d.w[NLEN+i]; b.w[i]=t&BMASK; t>>=CONFIG_BIG.BASEBITS;
+		}
+		b.w[NLEN-1]=t+d.w[DNLEN-1];
 		b.norm();
+	}
+
+	static BIG monty(BIG md,long MC,DBIG d)
+	{
+		BIG b=new BIG(0);
+		monty(b,md,MC,d);
 		return b;		
 	}
 
@@ -861,10 +1065,15 @@ public class BIG {
 		else return -1;
 	}
 
-/* this=1/this mod p. Binary method */
+/* this=1/this mod p. Constant time divsteps if so configured, else binary method */
 	public void invmodp(BIG p)
 	{
 		mod(p);
+		if (CONFIG_BIG.SAFEGCD)
+		{
+			new SAFEGCD(p).inverse(this);
+			return;
+		}
 		BIG u=new BIG(this);
 		BIG v=new BIG(p);
 		BIG x1=new BIG(1);
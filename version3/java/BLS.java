@@ -21,6 +21,10 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.milagro.amcl.RAND;
 import org.apache.milagro.amcl.SHA3;
 
@@ -30,31 +34,135 @@ public class BLS
 	public static final int BGS=CONFIG_BIG.MODBYTES;
 	public static final int BLS_OK=0;
 	public static final int BLS_FAIL=-1;
+	public static final int HASH_CACHE_SIZE=256;	/* hashed messages held by bls_hashit(), least recently used dropped first */
 
+	private static final Map<ByteBuffer,ECP> hcache=new LinkedHashMap<ByteBuffer,ECP>(16,0.75f,true) {
+		private static final long serialVersionUID=1L;
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer,ECP> e)
+		{
+			return size()>HASH_CACHE_SIZE;
+		}
+	};
+	private static long hits,misses;
 
 /* hash a message to an ECP point, using SHA3 */
 
 	static ECP bls_hashit(String m)
+	{
+		return bls_hashit(m.getBytes());
+	}
+
+	static ECP bls_hashit(byte[] m)
+	{
+		SHA3 sh=new SHA3(SHA3.SHAKE256);
+		sh.process_array(m);
+		return mapit(sh,false);
+	}
+
+/* as above, for the remaining bytes of m, which are consumed */
+
+	static ECP bls_hashit(ByteBuffer m)
+	{
+		SHA3 sh=new SHA3(SHA3.SHAKE256);
+		if (m.hasArray())
+		{
+			sh.process_array(m.array(),m.arrayOffset()+m.position(),m.remaining());
+			m.position(m.limit());
+		}
+		else
+		{
+			byte[] t=new byte[256];
+			int n;
+			while ((n=Math.min(t.length,m.remaining()))>0)
+			{
+				m.get(t,0,n);
+				sh.process_array(t,0,n);
+			}
+		}
+		return mapit(sh,false);
+	}
+
+/* as bls_hashit(), but with the constant time Shallue-van de Woestijne map of ECP.map2point(). This */
+/* gives different signatures to bls_hashit(), so signer and verifier must agree on which is used */
+
+	static ECP bls_hashit_svdw(String m)
+	{
+		return bls_hashit_svdw(m.getBytes());
+	}
+
+	static ECP bls_hashit_svdw(byte[] m)
 	{
 		SHA3 sh=new SHA3(SHA3.SHAKE256);
+		sh.process_array(m);
+		return mapit(sh,true);
+	}
+
+/* map the message hash to the curve, from the cache if possible. The map used is the last byte of the key */
+
+	private static ECP mapit(SHA3 sh,boolean svdw)
+	{
 		byte[] hm=new byte[BFS];
-		byte[] t=m.getBytes();
-		for (int i=0;i<t.length;i++)
-			sh.process(t[i]);
-		sh.shake(hm,BFS);    
-		ECP P=ECP.mapit(hm);
-		return P;
+		byte[] k=new byte[BFS+1];
+		sh.shake(hm,BFS);
+		for (int i=0;i<BFS;i++) k[i]=hm[i];
+		k[BFS]=(byte)(svdw?1:0);
+		ByteBuffer key=ByteBuffer.wrap(k);
+		ECP P;
+		synchronized (hcache)
+		{
+			P=hcache.get(key);
+			if (P!=null) hits++;
+			else misses++;
+		}
+		if (P==null)
+		{
+			if (svdw) P=ECP.map2point(hm);
+			else P=ECP.mapit(hm);
+			synchronized (hcache)
+			{
+				hcache.put(key,P);
+			}
+		}
+		return new ECP(P);
+	}
+
+/* number of bls_hashit() calls answered from and missing the cache */
+
+	public static long hashCacheHits()
+	{
+		synchronized (hcache)
+		{
+			return hits;
+		}
+	}
+
+	public static long hashCacheMisses()
+	{
+		synchronized (hcache)
+		{
+			return misses;
+		}
+	}
+
+/* empty the cache, and zero the counters */
+
+	public static void clearHashCache()
+	{
+		synchronized (hcache)
+		{
+			hcache.clear();
+			hits=misses=0;
+		}
 	}
 
 /* generate key pair, private key S, public key W */
 
 	public static int KeyPairGenerate(RAND RNG,byte[] S,byte[] W)
 	{
-		ECP2 G=ECP2.generator();
-		BIG q=new BIG(ROM.CURVE_Order);
+		BIG q=CONSTANTS.CURVE_ORDER;
 		BIG s=BIG.randomnum(q,RNG);
 		s.toBytes(S);
-		G=PAIR.G2mul(G,s);
+		ECP2 G=ECP2.genmul(s);
 		G.toBytes(W);
 		return BLS_OK;
 	}
@@ -63,7 +171,35 @@ public class BLS
 
 	public static int sign(byte[] SIG,String m,byte[] S)
 	{
-		ECP D=bls_hashit(m);
+		return sign(SIG,bls_hashit(m),S);
+	}
+
+	public static int sign(byte[] SIG,byte[] m,byte[] S)
+	{
+		return sign(SIG,bls_hashit(m),S);
+	}
+
+/* as above, for the remaining bytes of m, which are consumed */
+
+	public static int sign(byte[] SIG,ByteBuffer m,byte[] S)
+	{
+		return sign(SIG,bls_hashit(m),S);
+	}
+
+/* as sign(), hashing m with bls_hashit_svdw() */
+
+	public static int signSvdW(byte[] SIG,String m,byte[] S)
+	{
+		return sign(SIG,bls_hashit_svdw(m),S);
+	}
+
+	public static int signSvdW(byte[] SIG,byte[] m,byte[] S)
+	{
+		return sign(SIG,bls_hashit_svdw(m),S);
+	}
+
+	private static int sign(byte[] SIG,ECP D,byte[] S)
+	{
 		BIG s=BIG.fromBytes(S);
 		D=PAIR.G1mul(D,s);
 		D.toBytes(SIG,true);
@@ -74,10 +210,37 @@ public class BLS
 
 	public static int verify(byte[] SIG,String m,byte[] W)
 	{
-		ECP HM=bls_hashit(m);
-		ECP D=ECP.fromBytes(SIG);
-		ECP2 G=ECP2.generator();
-		ECP2 PK=ECP2.fromBytes(W);
+		return verify(ECP.fromBytes(SIG),bls_hashit(m),G2Prepared.fromBytes(W));
+	}
+
+	public static int verify(byte[] SIG,byte[] m,byte[] W)
+	{
+		return verify(ECP.fromBytes(SIG),bls_hashit(m),G2Prepared.fromBytes(W));
+	}
+
+/* as above, for the remaining bytes of m, which are consumed */
+
+	public static int verify(byte[] SIG,ByteBuffer m,byte[] W)
+	{
+		return verify(ECP.fromBytes(SIG),bls_hashit(m),G2Prepared.fromBytes(W));
+	}
+
+/* as verify(), for signatures made with signSvdW() */
+
+	public static int verifySvdW(byte[] SIG,String m,byte[] W)
+	{
+		return verify(ECP.fromBytes(SIG),bls_hashit_svdw(m),G2Prepared.fromBytes(W));
+	}
+
+	public static int verifySvdW(byte[] SIG,byte[] m,byte[] W)
+	{
+		return verify(ECP.fromBytes(SIG),bls_hashit_svdw(m),G2Prepared.fromBytes(W));
+	}
+
+	private static int verify(ECP D,ECP HM,G2Prepared PK)
+	{
+		G2Prepared G=G2Prepared.generator();
+		if (!PAIR.G1member(D) || PK.is_infinity()) return BLS_FAIL;
 		D.neg();
 		FP12 v=PAIR.ate2(G,D,PK,HM);
 		v=PAIR.fexp(v);
@@ -85,4 +248,191 @@ public class BLS
 			return BLS_OK;
 		return BLS_FAIL;
 	}
+
+/* Aggregate signatures SIG[i] into the single signature AS, by adding them in G1 */
+
+	public static int aggregateSignatures(byte[] AS,byte[][] SIG)
+	{
+		ECP D=new ECP();
+		for (int i=0;i<SIG.length;i++)
+		{
+			ECP T=ECP.fromBytes(SIG[i]);
+			if (!PAIR.G1member(T)) return BLS_FAIL;
+			D.add(T);
+		}
+		if (D.is_infinity()) return BLS_FAIL;
+		D.toBytes(AS,true);
+		return BLS_OK;
+	}
+
+/* sum of public keys W[i] in G2, or null if any are invalid */
+
+	private static ECP2 addkeys(byte[][] W)
+	{
+		ECP2 K=new ECP2();
+		for (int i=0;i<W.length;i++)
+		{
+			ECP2 T=ECP2.fromBytes(W[i]);
+			if (!PAIR.G2member(T)) return null;
+			K.add(T);
+		}
+		if (K.is_infinity()) return null;
+		return K;
+	}
+
+/* Aggregate public keys W[i] into the single public key AW, by adding them in G2. To defeat rogue */
+/* key attacks, only aggregate keys whose owners have proved possession of the private key */
+
+	public static int aggregatePublicKeys(byte[] AW,byte[][] W)
+	{
+		ECP2 K=addkeys(W);
+		if (K==null) return BLS_FAIL;
+		K.toBytes(AW);
+		return BLS_OK;
+	}
+
+/* Verify aggregate signature SIG on message m, signed by all of the keys W[i]. Two pairings */
+/* whatever the number of signers. Same proviso as for aggregatePublicKeys() */
+
+	public static int verifyAggregateSameMessage(byte[] SIG,String m,byte[][] W)
+	{
+		ECP2 K=addkeys(W);
+		if (K==null) return BLS_FAIL;
+		return verify(ECP.fromBytes(SIG),bls_hashit(m),new G2Prepared(K));
+	}
+
+/* Verify aggregate signature SIG, where key W[i] signed message m[i], as */
+/* e(-SIG,G).prod e(W[i],H(m[i]))=1 with one multi-pairing. The messages must be distinct */
+
+	public static int verifyAggregateDistinctMessages(byte[] SIG,String[] m,byte[][] W)
+	{
+		int i,n=m.length;
+		HashSet<String> seen=new HashSet<String>();
+		ECP D=ECP.fromBytes(SIG);
+		G2Prepared[] PK=new G2Prepared[n+1];
+		ECP[] HM=new ECP[n+1];
+
+		if (n==0 || !PAIR.G1member(D)) return BLS_FAIL;
+		for (i=0;i<n;i++)
+		{
+			if (!seen.add(m[i])) return BLS_FAIL;
+			PK[i]=G2Prepared.fromBytes(W[i]);
+			if (PK[i].is_infinity()) return BLS_FAIL;
+			HM[i]=bls_hashit(m[i]);
+		}
+		D.neg();
+		PK[n]=G2Prepared.generator();
+		HM[n]=D;
+
+		FP12 v=PAIR.multiAte(PK,HM);
+		v=PAIR.fexp(v);
+		if (v.isunity())
+			return BLS_OK;
+		return BLS_FAIL;
+	}
+
+/* Verify a batch of signatures, SIG[i] on message m[i] under public key W[i]. The checks are combined */
+/* with random multipliers r[i] into e(-sum r[i].SIG[i],G).prod e(W[i],r[i].H(m[i]))=1, one multi-pairing */
+/* with one final exponentiation. Returns BLS_OK only if every signature is valid */
+	public static int verifyBatch(byte[][] SIG,String[] m,byte[][] W,RAND rng)
+	{
+		return verifyBatch(SIG,m,W,rng,null);
+	}
+
+/* As above, and if the batch fails, find the bad signatures by bisection. res[i] is set to BLS_OK or BLS_FAIL */
+	public static int verifyBatch(byte[][] SIG,String[] m,byte[][] W,RAND rng,int[] res)
+	{
+		int i,k,n=SIG.length;
+		ECP[] D=new ECP[n];
+		ECP[] HM=new ECP[n];
+		G2Prepared[] PK=new G2Prepared[n];
+		int[] idx=new int[n];
+		int rtn=BLS_OK;
+
+		for (i=k=0;i<n;i++)
+		{
+			D[i]=ECP.fromBytes(SIG[i]);
+			PK[i]=G2Prepared.fromBytes(W[i]);
+			if (!PAIR.G1member(D[i]) || PK[i].is_infinity())
+			{
+				rtn=BLS_FAIL;
+				if (res==null) return rtn;
+				res[i]=BLS_FAIL;
+				continue;
+			}
+			HM[i]=bls_hashit(m[i]);
+			idx[k++]=i;
+		}
+
+		if (batch(D,HM,PK,idx,0,k,rng))
+		{
+			if (res!=null)
+				for (i=0;i<k;i++) res[idx[i]]=BLS_OK;
+			return rtn;
+		}
+		if (res!=null) bisect(D,HM,PK,idx,0,k,rng,res);
+		return BLS_FAIL;
+	}
+
+/* random multiplier for batch verification. A bad signature gets through with probability 2^-64 */
+	private static BIG batchrand(RAND rng)
+	{
+		BIG r=new BIG(0);
+		for (int i=0;i<8;i++)
+		{
+			r.fshl(8);
+			r.inc(rng.getByte()&0xff);
+		}
+		r.norm();
+		if (r.iszilch()) r.one();
+		return r;
+	}
+
+/* check signatures idx[lo..hi-1] together */
+	private static boolean batch(ECP[] D,ECP[] HM,G2Prepared[] PK,int[] idx,int lo,int hi,RAND rng)
+	{
+		int i,j,n=hi-lo;
+		G2Prepared[] Q=new G2Prepared[n+1];
+		ECP[] P=new ECP[n+1];
+		ECP S=new ECP();
+
+		for (i=0;i<n;i++)
+		{
+			j=idx[lo+i];
+			BIG r=batchrand(rng);
+			S.add(D[j].mul(r));
+			Q[i]=PK[j];
+			P[i]=HM[j].mul(r);
+		}
+		S.neg();
+		Q[n]=G2Prepared.generator();
+		P[n]=S;
+
+		FP12 v=PAIR.multiAte(Q,P);
+		v=PAIR.fexp(v);
+		return v.isunity();
+	}
+
+/* signatures idx[lo..hi-1] fail together - find which */
+	private static void bisect(ECP[] D,ECP[] HM,G2Prepared[] PK,int[] idx,int lo,int hi,RAND rng,int[] res)
+	{
+		int i,mid=(lo+hi)/2;
+		if (hi-lo==1)
+		{
+			res[idx[lo]]=BLS_FAIL;
+			return;
+		}
+		if (batch(D,HM,PK,idx,lo,mid,rng))
+		{ // so the other half must fail
+			for (i=lo;i<mid;i++) res[idx[i]]=BLS_OK;
+			bisect(D,HM,PK,idx,mid,hi,rng,res);
+			return;
+		}
+		bisect(D,HM,PK,idx,lo,mid,rng,res);
+		if (batch(D,HM,PK,idx,mid,hi,rng))
+		{
+			for (i=mid;i<hi;i++) res[idx[i]]=BLS_OK;
+		}
+		else bisect(D,HM,PK,idx,mid,hi,rng,res);
+	}
 }
@@ -21,6 +21,7 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.util.HashSet;
 import org.apache.milagro.amcl.RAND;
 import org.apache.milagro.amcl.SHA3;
 
@@ -35,6 +36,19 @@ public class BLS256
 /* hash a message to an ECP point, using SHA3 */
 
 	static ECP bls_hashit(String m)
+	{
+		return ECP.mapit(shake(m));
+	}
+
+/* as above, but with the constant time Shallue-van de Woestijne map of ECP.map2point(). This */
+/* gives different signatures to bls_hashit(), so signer and verifier must agree on which is used */
+
+	static ECP bls_hashit_svdw(String m)
+	{
+		return ECP.map2point(shake(m));
+	}
+
+	private static byte[] shake(String m)
 	{
 		SHA3 sh=new SHA3(SHA3.SHAKE256);
 		byte[] hm=new byte[BFS];
@@ -42,8 +56,7 @@ public class BLS256
 		for (int i=0;i<t.length;i++)
 			sh.process(t[i]);
 		sh.shake(hm,BFS);    
-		ECP P=ECP.mapit(hm);
-		return P;
+		return hm;
 	}
 
 /* generate key pair, private key S, public key W */
@@ -51,7 +64,7 @@ public class BLS256
 	public static int KeyPairGenerate(RAND RNG,byte[] S,byte[] W)
 	{
 		ECP8 G=ECP8.generator();
-		BIG q=new BIG(ROM.CURVE_Order);
+		BIG q=CONSTANTS.CURVE_ORDER;
 		BIG s=BIG.randomnum(q,RNG);
 		s.toBytes(S);
 		G=PAIR256.G2mul(G,s);
@@ -63,7 +76,18 @@ public class BLS256
 
 	public static int sign(byte[] SIG,String m,byte[] S)
 	{
-		ECP D=bls_hashit(m);
+		return sign(SIG,bls_hashit(m),S);
+	}
+
+/* as sign(), hashing m with bls_hashit_svdw() */
+
+	public static int signSvdW(byte[] SIG,String m,byte[] S)
+	{
+		return sign(SIG,bls_hashit_svdw(m),S);
+	}
+
+	private static int sign(byte[] SIG,ECP D,byte[] S)
+	{
 		BIG s=BIG.fromBytes(S);
 		D=PAIR256.G1mul(D,s);
 		D.toBytes(SIG,true);
@@ -74,10 +98,20 @@ public class BLS256
 
 	public static int verify(byte[] SIG,String m,byte[] W)
 	{
-		ECP HM=bls_hashit(m);
-		ECP D=ECP.fromBytes(SIG);
+		return verify(ECP.fromBytes(SIG),bls_hashit(m),ECP8.fromBytes(W));
+	}
+
+/* as verify(), for signatures made with signSvdW() */
+
+	public static int verifySvdW(byte[] SIG,String m,byte[] W)
+	{
+		return verify(ECP.fromBytes(SIG),bls_hashit_svdw(m),ECP8.fromBytes(W));
+	}
+
+	private static int verify(ECP D,ECP HM,ECP8 PK)
+	{
 		ECP8 G=ECP8.generator();
-		ECP8 PK=ECP8.fromBytes(W);
+		if (!PAIR256.G1member(D) || !PAIR256.G2member(PK)) return BLS_FAIL;
 		D.neg();
 		FP48 v=PAIR256.ate2(G,D,PK,HM);
 		v=PAIR256.fexp(v);
@@ -85,4 +119,86 @@ public class BLS256
 			return BLS_OK;
 		return BLS_FAIL;
 	}
+
+/* Aggregate signatures SIG[i] into the single signature AS, by adding them in G1 */
+
+	public static int aggregateSignatures(byte[] AS,byte[][] SIG)
+	{
+		ECP D=new ECP();
+		for (int i=0;i<SIG.length;i++)
+		{
+			ECP T=ECP.fromBytes(SIG[i]);
+			if (!PAIR256.G1member(T)) return BLS_FAIL;
+			D.add(T);
+		}
+		if (D.is_infinity()) return BLS_FAIL;
+		D.toBytes(AS,true);
+		return BLS_OK;
+	}
+
+/* sum of public keys W[i] in G2, or null if any are invalid */
+
+	private static ECP8 addkeys(byte[][] W)
+	{
+		ECP8 K=new ECP8();
+		for (int i=0;i<W.length;i++)
+		{
+			ECP8 T=ECP8.fromBytes(W[i]);
+			if (!PAIR256.G2member(T)) return null;
+			K.add(T);
+		}
+		if (K.is_infinity()) return null;
+		return K;
+	}
+
+/* Aggregate public keys W[i] into the single public key AW, by adding them in G2. To defeat rogue */
+/* key attacks, only aggregate keys whose owners have proved possession of the private key */
+
+	public static int aggregatePublicKeys(byte[] AW,byte[][] W)
+	{
+		ECP8 K=addkeys(W);
+		if (K==null) return BLS_FAIL;
+		K.toBytes(AW);
+		return BLS_OK;
+	}
+
+/* Verify aggregate signature SIG on message m, signed by all of the keys W[i]. Two pairings */
+/* whatever the number of signers. Same proviso as for aggregatePublicKeys() */
+
+	public static int verifyAggregateSameMessage(byte[] SIG,String m,byte[][] W)
+	{
+		ECP8 K=addkeys(W);
+		if (K==null) return BLS_FAIL;
+		return verify(ECP.fromBytes(SIG),bls_hashit(m),K);
+	}
+
+/* Verify aggregate signature SIG, where key W[i] signed message m[i], as */
+/* e(-SIG,G).prod e(W[i],H(m[i]))=1 with one multi-pairing. The messages must be distinct */
+
+	public static int verifyAggregateDistinctMessages(byte[] SIG,String[] m,byte[][] W)
+	{
+		int i,n=m.length;
+		HashSet<String> seen=new HashSet<String>();
+		ECP D=ECP.fromBytes(SIG);
+		ECP8[] PK=new ECP8[n+1];
+		ECP[] HM=new ECP[n+1];
+
+		if (n==0 || !PAIR256.G1member(D)) return BLS_FAIL;
+		for (i=0;i<n;i++)
+		{
+			if (!seen.add(m[i])) return BLS_FAIL;
+			PK[i]=ECP8.fromBytes(W[i]);
+			if (!PAIR256.G2member(PK[i])) return BLS_FAIL;
+			HM[i]=bls_hashit(m[i]);
+		}
+		D.neg();
+		PK[n]=ECP8.generator();
+		HM[n]=D;
+
+		FP48 v=PAIR256.multiAte(PK,HM);
+		v=PAIR256.fexp(v);
+		if (v.isunity())
+			return BLS_OK;
+		return BLS_FAIL;
+	}
 }
@@ -3,4 +3,6 @@ package org.apache.milagro.amcl.XXX;
 public class CONFIG_BIG {
 	public static final int MODBYTES=@NB@; 
 	public static final int BASEBITS=@BASE@; 
+	public static final int KARATSUBA=@KT@; /* BIG mul and sqr go Karatsuba from this many limbs */
+	public static final boolean SAFEGCD=@SG@; /* FP.inverse and BIG.invmodp use constant time divsteps */
 }
@@ -24,6 +24,8 @@ public class CONFIG_CURVE {
 	public static final int HASH_TYPE=@HT@;
 	public static final int AESKEY=@AK@;
 
+	public static final int MUL_WINDOW=@MW@;	/* window for ECP.mul etc, 2..6 - set for each curve by the config script */
+
 	public static final boolean USE_GLV =true;
 	public static final boolean USE_GS_G2 =true;
 	public static final boolean USE_GS_GT =true;	
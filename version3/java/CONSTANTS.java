@@ -0,0 +1,36 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Field and curve constants, decoded once from the ROM tables */
+/* These objects are shared by all threads, so they are kept inside the package, and must never be modified */
+
+package org.apache.milagro.amcl.XXX;
+
+final class CONSTANTS {
+	static final BIG MODULUS=new BIG(ROM.Modulus);
+	static final BIG R2MODP=new BIG(ROM.R2modp);
+	static final BIG CURVE_ORDER=new BIG(ROM.CURVE_Order);
+	static final BIG CURVE_COF=new BIG(ROM.CURVE_Cof);
+	static final FP CURVE_B=new FP(new BIG(ROM.CURVE_B));
+	static final SAFEGCD MODINV=new SAFEGCD(MODULUS);	/* inversion mod Modulus */
+
+	static {
+		CURVE_B.reduce();
+	}
+}
@@ -36,10 +36,9 @@ public class DBIG {
 		w[BIG.DNLEN-1]=(w[BIG.DNLEN-1]+carry);
 	}
 
-/* split DBIG at position n, return higher half, keep lower half */
-	public BIG split(int n)
+/* split DBIG at position n, higher half to t, keep lower half */
+	public void split(BIG t,int n)
 	{
-		BIG t=new BIG(0);
 		int nw,m=n%CONFIG_BIG.BASEBITS;
 		int carry=w[BIG.DNLEN-1]<<(CONFIG_BIG.BASEBITS-m);
 
@@ -50,9 +49,15 @@ public class DBIG {
 			t.w[i-BIG.NLEN+1]=nw;
 		}
 		w[BIG.NLEN-1]&=(((int)1<<m)-1);
-		return t;
 	}
 
+/* split DBIG at position n, return higher half, keep lower half */
+	public BIG split(int n)
+	{
+		BIG t=new BIG(0);
+		split(t,n);
+		return t;
+	}
 
 /****************************************************************************/
 
@@ -130,6 +135,18 @@ public class DBIG {
 			w[i]=x.w[i];
 	}
 
+/* Copy from a BIG */
+	public void copy(BIG x)
+	{
+		for (int i=0;i<BIG.NLEN-1;i++)
+			w[i]=x.w[i];
+
+		w[BIG.NLEN-1]=x.w[(BIG.NLEN-1)]&BIG.BMASK; /* top word normalized */
+		w[BIG.NLEN]=(x.w[(BIG.NLEN-1)]>>CONFIG_BIG.BASEBITS);
+
+		for (int i=BIG.NLEN+1;i<BIG.DNLEN;i++) w[i]=0;
+	}
+
 /* Copy into upper part */
 	public void ucopy(BIG x)
 	{
@@ -37,10 +37,9 @@ public class DBIG {
 	}
 
 
-/* split DBIG at position n, return higher half, keep lower half */
-	public BIG split(int n)
+/* split DBIG at position n, higher half to t, keep lower half */
+	public void split(BIG t,int n)
 	{
-		BIG t=new BIG(0);
 		int m=n%CONFIG_BIG.BASEBITS;
 		long nw,carry=w[BIG.DNLEN-1]<<(CONFIG_BIG.BASEBITS-m);
 
@@ -51,6 +50,13 @@ public class DBIG {
 			t.w[i-BIG.NLEN+1]=nw;
 		}
 		w[BIG.NLEN-1]&=(((long)1<<m)-1);
+	}
+
+/* split DBIG at position n, return higher half, keep lower half */
+	public BIG split(int n)
+	{
+		BIG t=new BIG(0);
+		split(t,n);
 		return t;
 	}
 
@@ -128,6 +134,18 @@ public class DBIG {
 			w[i]=x.w[i];
 	}
 
+/* Copy from a BIG */
+	public void copy(BIG x)
+	{
+		for (int i=0;i<BIG.NLEN-1;i++)
+			w[i]=x.w[i];
+
+		w[BIG.NLEN-1]=x.w[(BIG.NLEN-1)]&BIG.BMASK; /* top word normalized */
+		w[BIG.NLEN]=(x.w[(BIG.NLEN-1)]>>CONFIG_BIG.BASEBITS);
+
+		for (int i=BIG.NLEN+1;i<BIG.DNLEN;i++) w[i]=0;
+	}
+
 /* Copy into upper part */
 	public void ucopy(BIG x)
 	{
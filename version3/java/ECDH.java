@@ -26,6 +26,8 @@ import org.apache.milagro.amcl.HASH256;
 import org.apache.milagro.amcl.HASH384;
 import org.apache.milagro.amcl.HASH512;
 import org.apache.milagro.amcl.AES;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 
 public final class ECDH {
 	public static final int INVALID_PUBLIC_KEY=-2;
@@ -33,6 +35,7 @@ public final class ECDH {
 	public static final int INVALID=-4;
 	public static final int EFS=CONFIG_BIG.MODBYTES;
 	public static final int EGS=CONFIG_BIG.MODBYTES;
+	private static final int DSA_KEY_WINDOW=5; /* NAF width for the public keys in VP_DSA_BATCH */
 
 /* Convert Integer to n-byte array */
 	public static byte[] inttoBytes(int n,int len)
@@ -311,12 +314,10 @@ public final class ECDH {
 	public static int KEY_PAIR_GENERATE(RAND RNG,byte[] S,byte[] W)
 	{
 		BIG r,s;
-		ECP G,WP;
+		ECP WP;
 		int res=0;
 
-		G=ECP.generator();
-
-		r=new BIG(ROM.CURVE_Order);
+		r=CONSTANTS.CURVE_ORDER;
 
 		if (RNG==null)
 		{
@@ -330,7 +331,7 @@ public final class ECDH {
 
 		s.toBytes(S);
 
-		WP=G.mul(s);
+		WP=ECP.genmul(s);
 		WP.toBytes(W,false);  // To use point compression on public keys, change to true 
 
 		return res;
@@ -343,14 +344,14 @@ public final class ECDH {
 		ECP WP=ECP.fromBytes(W);
 		int nb,res=0;
 
-		r=new BIG(ROM.CURVE_Order);
+		r=CONSTANTS.CURVE_ORDER;
 
 		if (WP.is_infinity()) res=INVALID_PUBLIC_KEY;
 
 		if (res==0)
 		{
 
-			q=new BIG(ROM.Modulus);
+			q=CONSTANTS.MODULUS;
 			nb=q.nbits();
 			k=new BIG(1); k.shl((nb+4)/2);
 			k.add(q);
@@ -384,7 +385,7 @@ public final class ECDH {
 
 		if (res==0)
 		{
-			r=new BIG(ROM.CURVE_Order);
+			r=CONSTANTS.CURVE_ORDER;
 			s.mod(r);
 
 			W=W.mul(s);
@@ -398,16 +399,74 @@ public final class ECDH {
 		return res;
 	}
 
+/* SVDP_DH(S[i],WD[i],Z[i]) for each i, with res[i] set to its result. The result is 0 only if all succeed, */
+/* else ERROR. On Montgomery curves each shared secret is found with the x-only ladder, and the final */
+/* inversions of the whole batch are shared, so there is one in all. Other curves take the items in turn */
+	public static int SVDP_DH_BATCH(byte[][] S,byte[][] WD,byte[][] Z,int[] res)
+	{
+		int i,n=S.length,rtn=0;
+		if (CONFIG_CURVE.CURVETYPE!=CONFIG_CURVE.MONTGOMERY)
+		{
+			for (i=0;i<n;i++)
+			{
+				res[i]=SVDP_DH(S[i],WD[i],Z[i]);
+				if (res[i]!=0) rtn=ERROR;
+			}
+			return rtn;
+		}
+
+		BIG r=CONSTANTS.CURVE_ORDER;
+		BIG s;
+		ECP W;
+		FP[] X=new FP[n];
+		FP[] D=new FP[n];
+		byte[] T=new byte[EFS];
+
+		for (i=0;i<n;i++)
+		{
+			X[i]=new FP(0);
+			D[i]=new FP(0);
+			res[i]=0;
+			W=ECP.fromBytes(WD[i]);
+			if (W.is_infinity())
+			{
+				res[i]=ERROR;
+				continue;
+			}
+			s=BIG.fromBytes(S[i]);
+			s.mod(r);
+			if (s.iszilch())
+			{
+				res[i]=ERROR;
+				continue;
+			}
+			ECP.xladder(X[i],D[i],W.getx(),s);
+		}
+		FP.batchInverseSafe(D,D);
+		for (i=0;i<n;i++)
+		{
+			if (res[i]==0 && D[i].iszilch()) res[i]=ERROR;
+			if (res[i]!=0)
+			{
+				rtn=ERROR;
+				continue;
+			}
+			X[i].mul(D[i]);
+			X[i].redc().toBytes(T);
+			for (int j=0;j<EFS;j++) Z[i][j]=T[j];
+		}
+		return rtn;
+	}
+
 /* IEEE ECDSA Signature, C and D are signature on F using private key S */
 	public static int SP_DSA(int sha,RAND RNG,byte[] S,byte[] F,byte[] C,byte[] D)
 	{
 		byte[] T=new byte[EFS];
 		BIG r,s,f,c,d,u,vx,w;
-		ECP G,V;
+		ECP V;
 		byte[] B=hashit(sha,F,0,null,CONFIG_BIG.MODBYTES);
 
-		G=ECP.generator();
-		r=new BIG(ROM.CURVE_Order);
+		r=CONSTANTS.CURVE_ORDER;
 
 		s=BIG.fromBytes(S);
 		f=BIG.fromBytes(B);
@@ -420,8 +479,7 @@ public final class ECDH {
 			u=BIG.randomnum(r,RNG);
 			w=BIG.randomnum(r,RNG); /* side channel masking */
 
-			V.copy(G);
-			V=V.mul(u);   		
+			V=ECP.genmul(u);
 			vx=V.getX();
 			c.copy(vx);
 			c.mod(r);
@@ -445,7 +503,8 @@ public final class ECDH {
 		return 0;
 	}
 
-/* IEEE1363 ECDSA Signature Verification. Signature C and D on F is verified using public key W */
+/* IEEE1363 ECDSA Signature Verification. Signature C and D on F is verified using public key W, which is */
+/* decoded through the point cache of ECP.fromBytesCached() */
 	public static int VP_DSA(int sha,byte[] W,byte[] F, byte[] C,byte[] D)
 	{
 		BIG r,f,c,d,h2;
@@ -456,7 +515,7 @@ public final class ECDH {
 		byte[] B=hashit(sha,F,0,null,CONFIG_BIG.MODBYTES);
 
 		G=ECP.generator();
-		r=new BIG(ROM.CURVE_Order);
+		r=CONSTANTS.CURVE_ORDER;
 
 		c=BIG.fromBytes(C);
 		d=BIG.fromBytes(D);
@@ -471,7 +530,7 @@ public final class ECDH {
 			f.copy(BIG.modmul(f,d,r));
 			h2=BIG.modmul(c,d,r);
 
-			WP=ECP.fromBytes(W);
+			WP=ECP.fromBytesCached(W);
 			if (WP.is_infinity()) res=ERROR;
 			else
 			{
@@ -491,6 +550,87 @@ public final class ECDH {
 		return res;
 	}
 
+/* Verify a batch of IEEE1363 ECDSA signatures C[i],D[i] on messages F[i] under public keys W[i]. res[i] is */
+/* set to what VP_DSA(sha,W[i],F[i],C[i],D[i]) would return, and the result is 0 only if every one is good, */
+/* else INVALID. The keys are decoded together, with one visit to the point cache, and a key that recurs */
+/* in the batch is decoded, and its table of odd multiples built, just once. */
+/* As the multipliers are public, u1.G+u2.W is found by interleaving their NAFs, with a fixed table for G, */
+/* and the points are all made affine with one shared inversion */
+	public static int VP_DSA_BATCH(int sha,byte[][] W,byte[][] F,byte[][] C,byte[][] D,int[] res)
+	{
+		BIG r,f,c,d,h2;
+		int i,k,n=F.length,rtn=0;
+		ECP[][] TG,TW;
+		ECP[] P=new ECP[n];
+		ECP[] A;
+		BIG[] cs=new BIG[n];
+		HashMap<ByteBuffer,ECP[][]> keys=new HashMap<ByteBuffer,ECP[][]>();
+		ByteBuffer key;
+
+		r=CONSTANTS.CURVE_ORDER;
+		TG=ECP.genodd();
+		ECP[] WP=ECP.fromBytesCached(W);
+
+		for (i=0;i<n;i++)
+		{
+			res[i]=0;
+			byte[] B=hashit(sha,F[i],0,null,CONFIG_BIG.MODBYTES);
+			c=BIG.fromBytes(C[i]);
+			d=BIG.fromBytes(D[i]);
+			f=BIG.fromBytes(B);
+
+			if (c.iszilch() || BIG.comp(c,r)>=0 || d.iszilch() || BIG.comp(d,r)>=0)
+			{
+				res[i]=INVALID;
+				continue;
+			}
+
+			key=ByteBuffer.wrap(W[i]);
+			TW=keys.get(key);
+			if (TW==null)
+			{
+				if (WP[i].is_infinity()) TW=new ECP[0][];
+				else TW=ECP.oddmults(WP[i],1<<(DSA_KEY_WINDOW-2));
+				keys.put(key,TW);
+			}
+			if (TW.length==0)
+			{
+				res[i]=ERROR;
+				continue;
+			}
+
+			d.invmodp(r);
+			f.copy(BIG.modmul(f,d,r));
+			h2=BIG.modmul(c,d,r);
+
+			P[i]=ECP.mulvt(new ECP[][][] {TG,TW},new byte[][] {ECP.wnaf(f,ECP.GENVT_WINDOW),ECP.wnaf(h2,DSA_KEY_WINDOW)});
+			cs[i]=c;
+		}
+
+		for (i=k=0;i<n;i++)
+			if (P[i]!=null) k++;
+		A=new ECP[k];
+		for (i=k=0;i<n;i++)
+			if (P[i]!=null) A[k++]=P[i];
+		ECP.affineBatch(A);
+
+		for (i=0;i<n;i++)
+		{
+			if (P[i]!=null)
+			{
+				if (P[i].is_infinity()) res[i]=INVALID;
+				else
+				{
+					d=P[i].getX();
+					d.mod(r);
+					if (BIG.comp(d,cs[i])!=0) res[i]=INVALID;
+				}
+			}
+			if (res[i]!=0) rtn=INVALID;
+		}
+		return rtn;
+	}
+
 /* IEEE1363 ECIES encryption. Encryption of plaintext M uses public key W and produces ciphertext V,C,T */
 	public static byte[] ECIES_ENCRYPT(int sha,byte[] P1,byte[] P2,RAND RNG,byte[] W,byte[] M,byte[] V,byte[] T)
 	{ 
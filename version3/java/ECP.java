@@ -21,6 +21,16 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public final class ECP {
 
 	private FP x;
@@ -96,14 +106,8 @@ public final class ECP {
 		int babs=(b^m)-m;
 
 		babs=(babs-1)/2;
-		cmove(W[0],teq(babs,0));  // conditional move
-		cmove(W[1],teq(babs,1));
-		cmove(W[2],teq(babs,2));
-		cmove(W[3],teq(babs,3));
-		cmove(W[4],teq(babs,4));
-		cmove(W[5],teq(babs,5));
-		cmove(W[6],teq(babs,6));
-		cmove(W[7],teq(babs,7));
+		for (int i=0;i<W.length;i++)
+			cmove(W[i],teq(babs,i));  // conditional move
  
 		MP.copy(this);
 		MP.neg();
@@ -162,7 +166,7 @@ public final class ECP {
 
 		if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.WEIERSTRASS)
 		{ // x^3+Ax+B
-			FP b=new FP(new BIG(ROM.CURVE_B));
+			FP b=CONSTANTS.CURVE_B;
 			r.mul(x);
 			if (ROM.CURVE_A==-3)
 			{
@@ -175,7 +179,7 @@ public final class ECP {
 		}
 		if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.EDWARDS)
 		{ // (Ax^2-1)/(Bx^2-1) 
-			FP b=new FP(new BIG(ROM.CURVE_B));
+			FP b=new FP(CONSTANTS.CURVE_B);
 
 			FP one=new FP(1);
 			b.mul(r);
@@ -226,9 +230,11 @@ public final class ECP {
 		FP rhs=RHS(x);
 		y=new FP(0);
 		z=new FP(1);
-		if (rhs.jacobi()==1)
-		{
-			FP ny=rhs.sqrt();
+		FP ny=rhs.sqrt();
+		FP t=new FP(ny);
+		t.sqr();
+		if (!rhs.iszilch() && t.equals(rhs))
+		{ /* the square root is checked, so there is no need to find the Jacobi symbol first */
 			if (ny.redc().parity()!=s) ny.neg();
 			y.copy(ny);
 		}
@@ -262,6 +268,30 @@ public final class ECP {
 		}
 		z.copy(one);
 	}
+/* convert all of P[] to affine, with one inversion shared by all the points. The points must be distinct objects */
+	public static void affineBatch(ECP[] P)
+	{
+		int i,k,n=0;
+		ECP[] Q=new ECP[P.length];
+
+		for (i=0;i<P.length;i++)
+			if (!P[i].is_infinity()) Q[n++]=P[i];
+
+		FP[] zs=new FP[n];
+		FP[] zi=new FP[n];
+		for (k=0;k<n;k++)
+			zs[k]=Q[k].z;
+		FP.batchInverse(zs,zi);
+		for (k=0;k<n;k++)
+		{
+			Q[k].x.mul(zi[k]); Q[k].x.reduce();
+			if (CONFIG_CURVE.CURVETYPE!=CONFIG_CURVE.MONTGOMERY)
+			{
+				Q[k].y.mul(zi[k]); Q[k].y.reduce();
+			}
+			Q[k].z.one();
+		}
+	}
 /* extract x as a BIG */
 	public BIG getX()
 	{
@@ -317,7 +347,7 @@ public final class ECP {
 		if (compress)
 		{
 			b[0]=0x02;
-			if (y.redc().parity()==1) b[0]=0x03;
+			if (W.y.redc().parity()==1) b[0]=0x03;
 			return;
 		}
 
@@ -330,7 +360,7 @@ public final class ECP {
 	public static ECP fromBytes(byte[] b)
 	{
 		byte[] t=new byte[CONFIG_BIG.MODBYTES];
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 
 		for (int i=0;i<CONFIG_BIG.MODBYTES;i++) t[i]=b[i+1];
 		BIG px=BIG.fromBytes(t);
@@ -355,6 +385,95 @@ public final class ECP {
 		}
 		return new ECP();
 	}
+
+	public static final int POINT_CACHE_SIZE=1024;	/* points held by fromBytesCached(), least recently used dropped first */
+
+	private static final Map<ByteBuffer,ECP> pcache=new LinkedHashMap<ByteBuffer,ECP>(16,0.75f,true) {
+		private static final long serialVersionUID=1L;
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer,ECP> e)
+		{
+			return size()>POINT_CACHE_SIZE;
+		}
+	};
+	private static long phits,pmisses;
+
+/* fromBytes(b), but the point is also checked to be in the group of prime order, and the point at infinity */
+/* is returned if it is not. Good points are cached by their encoding, so a public key that is seen again */
+/* is neither decompressed nor checked again */
+	public static ECP fromBytesCached(byte[] b)
+	{
+		return fromBytesCached(new byte[][] {b})[0];
+	}
+
+/* fromBytesCached() of each of b[]. The cache is consulted and updated once for the whole batch, and an */
+/* encoding repeated in the batch is decoded once */
+	public static ECP[] fromBytesCached(byte[][] b)
+	{
+		int i,n=b.length;
+		ECP[] P=new ECP[n];
+		ByteBuffer[] key=new ByteBuffer[n];
+		Map<ByteBuffer,ECP> miss=new HashMap<ByteBuffer,ECP>();
+
+		for (i=0;i<n;i++)
+			key[i]=ByteBuffer.wrap(b[i].clone());
+		synchronized (pcache)
+		{
+			for (i=0;i<n;i++)
+			{
+				P[i]=pcache.get(key[i]);
+				if (P[i]!=null) phits++;
+				else pmisses++;
+			}
+		}
+		for (i=0;i<n;i++)
+		{
+			if (P[i]!=null || miss.containsKey(key[i])) continue;
+			ECP Q=fromBytes(b[i]);
+			if (!Q.is_infinity() && ROM.CURVE_Cof_I!=1 && !Q.mul(CONSTANTS.CURVE_ORDER).is_infinity())
+				Q.inf();
+			miss.put(key[i],Q);
+		}
+		synchronized (pcache)
+		{
+			for (Map.Entry<ByteBuffer,ECP> e : miss.entrySet())
+				if (!e.getValue().is_infinity()) pcache.put(e.getKey(),e.getValue());
+		}
+		for (i=0;i<n;i++)
+		{
+			if (P[i]==null) P[i]=miss.get(key[i]);
+			P[i]=new ECP(P[i]);
+		}
+		return P;
+	}
+
+/* fromBytesCached() lookups that found the point in the cache */
+	public static long pointCacheHits()
+	{
+		synchronized (pcache)
+		{
+			return phits;
+		}
+	}
+
+/* fromBytesCached() lookups that did not */
+	public static long pointCacheMisses()
+	{
+		synchronized (pcache)
+		{
+			return pmisses;
+		}
+	}
+
+/* empty the point cache, and reset its counts */
+	public static void clearPointCache()
+	{
+		synchronized (pcache)
+		{
+			pcache.clear();
+			phits=pmisses=0;
+		}
+	}
+
 /* convert to hex string */
 	public String toString() {
 		ECP W=new ECP(this);	
@@ -415,7 +534,7 @@ public final class ECP {
 				FP b=new FP(0);
 
 				if (ROM.CURVE_B_I==0)
-					b.copy(new FP(new BIG(ROM.CURVE_B)));
+					b.copy(CONSTANTS.CURVE_B);
 
 				t0.sqr();  //1    x^2
 				t1.sqr();  //2    y^2
@@ -523,6 +642,12 @@ public final class ECP {
 
 /* this+=Q */
 	public void add(ECP Q) {
+		add(Q,false);
+	}
+
+/* this+=Q, where Q is affine (z=1) and not the point at infinity if aff is set. On Weierstrass curves this */
+/* saves a multiplication and some additions. Any this is allowed */
+	void add(ECP Q,boolean aff) {
 
 		if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.WEIERSTRASS)
 		{
@@ -534,7 +659,7 @@ public final class ECP {
 				FP t1=new FP(y);
 				t1.mul(Q.y);
 				FP t2=new FP(z);
-				t2.mul(Q.z);
+				if (!aff) t2.mul(Q.z);
 				FP t3=new FP(x);
 				t3.add(y); t3.norm();
 				FP t4=new FP(Q.x);
@@ -543,23 +668,31 @@ public final class ECP {
 				t4.copy(t0); t4.add(t1);
 
 				t3.sub(t4); t3.norm();
-				t4.copy(y);
-				t4.add(z); t4.norm();
 				FP x3=new FP(Q.y);
-				x3.add(Q.z); x3.norm();
-
-				t4.mul(x3);
-				x3.copy(t1);
-				x3.add(t2);
-	
-				t4.sub(x3); t4.norm();
-				x3.copy(x); x3.add(z); x3.norm();
 				FP y3=new FP(Q.x);
-				y3.add(Q.z); y3.norm();
-				x3.mul(y3);
-				y3.copy(t0);
-				y3.add(t2);
-				y3.rsub(x3); y3.norm();
+				if (aff)
+				{ /* Y1.Z2+Y2.Z1 and X1.Z2+X2.Z1 with Z2=1 */
+					t4.copy(Q.y); t4.mul(z); t4.add(y); t4.norm();
+					y3.mul(z); y3.add(x); y3.norm();
+				}
+				else
+				{
+					t4.copy(y);
+					t4.add(z); t4.norm();
+					x3.add(Q.z); x3.norm();
+
+					t4.mul(x3);
+					x3.copy(t1);
+					x3.add(t2);
+	
+					t4.sub(x3); t4.norm();
+					x3.copy(x); x3.add(z); x3.norm();
+					y3.add(Q.z); y3.norm();
+					x3.mul(y3);
+					y3.copy(t0);
+					y3.add(t2);
+					y3.rsub(x3); y3.norm();
+				}
 				x3.copy(t0); x3.add(t0); 
 				t0.add(x3); t0.norm();
 				t2.imul(b);
@@ -589,30 +722,38 @@ public final class ECP {
 				FP b=new FP(0);
 
 				if (ROM.CURVE_B_I==0)
-					b.copy(new FP(new BIG(ROM.CURVE_B)));
+					b.copy(CONSTANTS.CURVE_B);
 
 				t0.mul(Q.x); //1
 				t1.mul(Q.y); //2
-				t2.mul(Q.z); //3
+				if (!aff) t2.mul(Q.z); //3
 
 				t3.add(y); t3.norm(); //4
 				t4.add(Q.y); t4.norm();//5
 				t3.mul(t4);//6
 				t4.copy(t0); t4.add(t1); //t4.norm(); //7
 				t3.sub(t4); t3.norm(); //8
-				t4.copy(y); t4.add(z); t4.norm();//9
-				x3.add(Q.z); x3.norm();//10
-				t4.mul(x3); //11
-				x3.copy(t1); x3.add(t2); //x3.norm();//12
+				if (aff)
+				{ /* Y1.Z2+Y2.Z1 and X1.Z2+X2.Z1 with Z2=1 */
+					t4.copy(Q.y); t4.mul(z); t4.add(y); t4.norm();
+					y3.mul(z); y3.add(x); y3.norm();
+				}
+				else
+				{
+					t4.copy(y); t4.add(z); t4.norm();//9
+					x3.add(Q.z); x3.norm();//10
+					t4.mul(x3); //11
+					x3.copy(t1); x3.add(t2); //x3.norm();//12
 
-				t4.sub(x3); t4.norm();//13
-				x3.copy(x); x3.add(z); x3.norm(); //14
-				y3.add(Q.z); y3.norm();//15
+					t4.sub(x3); t4.norm();//13
+					x3.copy(x); x3.add(z); x3.norm(); //14
+					y3.add(Q.z); y3.norm();//15
 
-				x3.mul(y3); //16
-				y3.copy(t0); y3.add(t2); //y3.norm();//17
+					x3.mul(y3); //16
+					y3.copy(t0); y3.add(t2); //y3.norm();//17
 
-				y3.rsub(x3); y3.norm(); //18
+					y3.rsub(x3); y3.norm(); //18
+				}
 				z3.copy(t2); 
 				
 
@@ -669,7 +810,7 @@ public final class ECP {
 			FP F=new FP(0);
 			FP G=new FP(0);
 
-			A.mul(Q.z);   
+			if (!aff) A.mul(Q.z);   
 			B.copy(A); B.sqr();    
 			C.mul(Q.x);      
 			D.mul(Q.y); 
@@ -678,7 +819,7 @@ public final class ECP {
 		
 			if (ROM.CURVE_B_I==0)
 			{
-				FP b=new FP(new BIG(ROM.CURVE_B));
+				FP b=CONSTANTS.CURVE_B;
 				E.mul(b);
 			}
 			else
@@ -780,47 +921,119 @@ public final class ECP {
 		}
 	}
 
-/* return e.this */
+/* workspace for xladder(), one for each thread, so that the ladder allocates nothing */
+	private static final class XLadder {
+		final FP x2=new FP(),z2=new FP(),x3=new FP(),z3=new FP();
+		final FP a=new FP(),aa=new FP(),b=new FP(),bb=new FP(),c=new FP(),d=new FP(),t=new FP();
+		final FP a24=new FP((ROM.CURVE_A-2)/4);
+		final FPScratch s=FPScratch.get();
+
+		private static final ThreadLocal<XLadder> local=new ThreadLocal<XLadder>() {
+			protected XLadder initialValue()
+			{
+				return new XLadder();
+			}
+		};
+	}
+
+/* (X:Z)=e.P on a Montgomery curve, from the affine x coordinate x1 of P. The x-only ladder of RFC 7748, on */
+/* bare FPs, with a24=(A-2)/4 - so A=2 mod 4, as for C25519 and X448. It runs over at least MODBITS bits of e */
+/* whatever its size, swapping with cswap, and there is no inversion - X/Z is the x coordinate, and Z=0 for O */
+	static void xladder(FP X,FP Z,FP x1,BIG e)
+	{
+		XLadder L=XLadder.local.get();
+		FPScratch s=L.s;
+		FP x2=L.x2,z2=L.z2,x3=L.x3,z3=L.z3;
+		FP a=L.a,aa=L.aa,b=L.b,bb=L.bb,c=L.c,d=L.d,t=L.t;
+		int i,k,sw=0;
+		int nb=Math.max(e.nbits(),CONFIG_FIELD.MODBITS);
+
+		x2.one(); z2.zero();
+		x3.copy(x1); z3.one();
+		for (i=nb-1;i>=0;i--)
+		{
+			k=e.bit(i);
+			sw^=k;
+			x2.cswap(x3,sw);
+			z2.cswap(z3,sw);
+			sw=k;
+
+			a.copy(x2); a.add(z2); a.norm();
+			aa.sqr(a,s);
+			t.copy(z2); t.neg();
+			b.copy(x2); b.add(t); b.norm();
+			bb.sqr(b,s);
+			c.copy(x3); c.add(z3); c.norm();
+			t.copy(z3); t.neg();
+			d.copy(x3); d.add(t); d.norm();
+			d.mul(d,a,s);			/* DA */
+			c.mul(c,b,s);			/* CB */
+			x3.copy(d); x3.add(c); x3.norm();
+			x3.sqr(x3,s);
+			t.copy(c); t.neg();
+			z3.copy(d); z3.add(t); z3.norm();
+			z3.sqr(z3,s);
+			z3.mul(z3,x1,s);
+			x2.mul(aa,bb,s);
+			t.copy(bb); t.neg();
+			a.copy(aa); a.add(t); a.norm();	/* E=AA-BB */
+			z2.mul(a,L.a24,s);
+			z2.add(aa); z2.norm();
+			z2.mul(z2,a,s);
+		}
+		x2.cswap(x3,sw);
+		z2.cswap(z3,sw);
+		X.copy(x2);
+		Z.copy(z2);
+	}
+
+/* this*e for a public constant e given by its NAF digits d[], most significant first, as PFCONSTANTS.CURVE_BNX_NAF */
+/* on pairing-friendly curves. A signed addition chain - variable time, so never for secret e. Weierstrass curves only */
+	public ECP mulnaf(byte[] d)
+	{
+		ECP P=new ECP(this);
+		ECP M=new ECP(this);
+		M.neg();
+		for (int i=1;i<d.length;i++)
+		{
+			P.dbl();
+			if (d[i]==1) P.add(this);
+			if (d[i]==-1) P.add(M);
+		}
+		return P;
+	}
+
+/* return e.this, with signed windows of MUL_WINDOW bits */
 
 	public ECP mul(BIG e) {
+		return mul(e,CONFIG_CURVE.MUL_WINDOW);
+	}
+
+/* return e.this. On Weierstrass and Edwards curves e is regularly recoded into signed windows of wd bits, */
+/* and the time for a given wd does not depend on e - every window adds one of the 2^(wd-1) odd multiples */
+/* of this, picked out by cmove. Montgomery curves use the ladder. IllegalArgumentException unless 2<=wd<=6 */
+
+	public ECP mul(BIG e,int wd) {
+		if (wd<2 || wd>6) throw new IllegalArgumentException("window width "+wd);
 		if (e.iszilch() || is_infinity()) return new ECP();
 		ECP P=new ECP();
 		if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.MONTGOMERY)
 		{
 /* use Ladder */
-			int nb,i,b;
-			ECP D=new ECP();
-			ECP R0=new ECP(); R0.copy(this);
-			ECP R1=new ECP(); R1.copy(this);
-			R1.dbl();
-
-			D.copy(this); D.affine();
-			nb=e.nbits();
-			for (i=nb-2;i>=0;i--)
-			{
-				b=e.bit(i);
-				P.copy(R1);
-
-				P.dadd(R0,D);
-				R0.cswap(R1,b);
-				R1.copy(P);
-				R0.dbl();
-				R0.cswap(R1,b);
-
-			}
-
-			P.copy(R0);
+			ECP D=new ECP(this);
+			D.affine();
+			xladder(P.x,P.z,D.x,e);
 		}
 		else
 		{
 // fixed size windows 
-			int i,b,nb,m,s,ns;
+			int i,j,nb,s,ns,nw=1<<(wd-1);
 			BIG mt=new BIG();
 			BIG t=new BIG();
 			ECP Q=new ECP();
 			ECP C=new ECP();
-			ECP[] W=new ECP[8];
-			byte[] w=new byte[1+(BIG.NLEN*CONFIG_BIG.BASEBITS+3)/4];
+			ECP[] W=new ECP[nw];
+			byte[] w=new byte[2+(BIG.NLEN*CONFIG_BIG.BASEBITS+wd-1)/wd];
 
 // precompute table 
 			Q.copy(this);
@@ -829,7 +1042,7 @@ public final class ECP {
 			W[0]=new ECP();
 			W[0].copy(this);
 
-			for (i=1;i<8;i++)
+			for (i=1;i<nw;i++)
 			{
 				W[i]=new ECP();
 				W[i].copy(W[i-1]);
@@ -844,25 +1057,23 @@ public final class ECP {
 			Q.cmove(this,ns);
 			C.copy(Q);
 
-			nb=1+(t.nbits()+3)/4;
+			nb=1+(t.nbits()+wd-1)/wd;
 
-// convert exponent to signed 4-bit window 
+// convert exponent to signed wd-bit windows, all odd 
 			for (i=0;i<nb;i++)
 			{
-				w[i]=(byte)(t.lastbits(5)-16);
+				w[i]=(byte)(t.lastbits(wd+1)-2*nw);
 				t.dec(w[i]); t.norm();
-				t.fshr(4);	
+				t.fshr(wd);	
 			}
-			w[nb]=(byte)t.lastbits(5);
+			w[nb]=(byte)t.lastbits(wd+1);
 	
 			P.copy(W[(w[nb]-1)/2]);  
 			for (i=nb-1;i>=0;i--)
 			{
 				Q.select(W,w[i]);
-				P.dbl();
-				P.dbl();
-				P.dbl();
-				P.dbl();
+				for (j=0;j<wd;j++)
+					P.dbl();
 				P.add(Q);
 			}
 			P.sub(C); /* apply correction */
@@ -943,6 +1154,352 @@ public final class ECP {
 		return S;
 	}
 
+/* Fixed base table for the generator G, built once, on first use. */
+/* T[j][i]=(2i+1).16^j.G, one row for each signed 4-bit window of a multiplier less than the group order */
+	private static final class GenTable {
+		static final ECP[][] T=build();
+
+		private static ECP[][] build()
+		{
+			int i,j,nw=2+(CONSTANTS.CURVE_ORDER.nbits()+4)/4;
+			ECP[][] T=new ECP[nw][8];
+			ECP[] A=new ECP[8*nw];
+			ECP B=generator();
+			ECP D=new ECP();
+
+			for (j=0;j<nw;j++)
+			{
+				D.copy(B); D.dbl();
+				T[j][0]=new ECP(); T[j][0].copy(B);
+				for (i=1;i<8;i++)
+				{
+					T[j][i]=new ECP();
+					T[j][i].copy(T[j][i-1]);
+					T[j][i].add(D);
+				}
+				for (i=0;i<8;i++) A[8*j+i]=T[j][i];
+				for (i=0;i<4;i++) B.dbl();
+			}
+			affineBatch(A);
+			return T;
+		}
+	}
+
+/* return e.G, where G is the generator. As mul(), but with the windows looked up in the */
+/* fixed base table, so there are no doublings, and a fixed number of additions */
+	public static ECP genmul(BIG e)
+	{
+		if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.MONTGOMERY)
+			return generator().mul(e);
+
+		ECP[][] T=GenTable.T;
+		int i,s,ns,nb=T.length-1;
+		BIG t=new BIG(e);
+		BIG mt=new BIG();
+		ECP P=new ECP();
+		ECP Q=new ECP();
+		ECP C=new ECP();
+		byte[] w=new byte[nb+1];
+
+		t.mod(CONSTANTS.CURVE_ORDER);
+
+// make exponent odd - add 2G if even, G if odd 
+		s=t.parity();
+		t.inc(1); t.norm(); ns=t.parity(); mt.copy(t); mt.inc(1); mt.norm();
+		t.cmove(mt,s);
+		C.copy(T[0][0]); C.dbl();
+		C.cmove(T[0][0],ns);
+
+// convert exponent to signed 4-bit window 
+		for (i=0;i<nb;i++)
+		{
+			w[i]=(byte)(t.lastbits(5)-16);
+			t.dec(w[i]); t.norm();
+			t.fshr(4);	
+		}
+		w[nb]=(byte)t.lastbits(5);
+
+		for (i=0;i<=nb;i++)
+		{
+			Q.select(T[i],w[i]);
+			P.add(Q);
+		}
+		P.sub(C); /* apply correction */
+		P.affine();
+		return P;
+	}
+
+/* width w NAF of e, least significant digit first. The digits are odd and less than 2^(w-1) in size, */
+/* and there are at least w-1 zeros between non-zero digits */
+	static byte[] wnaf(BIG e,int w)
+	{
+		BIG t=new BIG(e);
+		t.norm();
+		byte[] d=new byte[t.nbits()+1];
+		int i,v,m=1<<w;
+
+		for (i=0;!t.iszilch();i++)
+		{
+			if (t.parity()==1)
+			{
+				v=t.lastbits(w);
+				if (v>=m/2) v-=m;
+				d[i]=(byte)v;
+				if (v>0) t.dec(v);
+				else t.inc(-v);
+				t.norm();
+			}
+			t.fshr(1);
+		}
+		return d;
+	}
+
+/* T[0][i]=(2i+1).P and T[1][i]=-(2i+1).P for i<n, for the NAF digits of mulvt() */
+	static ECP[][] oddmults(ECP P,int n)
+	{
+		ECP[][] T=new ECP[2][n];
+		ECP D=new ECP(P);
+		D.dbl();
+		T[0][0]=new ECP(P);
+		for (int i=1;i<n;i++)
+		{
+			T[0][i]=new ECP(T[0][i-1]);
+			T[0][i].add(D);
+		}
+		affineBatch(T[0]);
+		for (int i=0;i<n;i++)
+		{
+			T[1][i]=new ECP(T[0][i]);
+			T[1][i].neg();
+		}
+		return T;
+	}
+
+/* odd multiples of the generator for wnaf(e,GENVT_WINDOW) digits, built once, on first use */
+	static final int GENVT_WINDOW=7;
+	private static final class GenOddTable {
+		static final ECP[][] T=oddmults(generator(),1<<(GENVT_WINDOW-2));
+	}
+
+/* the odd multiples of the generator, as oddmults(generator(),2^(GENVT_WINDOW-2)) */
+	static ECP[][] genodd()
+	{
+		return GenOddTable.T;
+	}
+
+/* sum of the points d[j].P[j], where T[j]=oddmults(P[j],..) has an entry for every digit of d[j]=wnaf(k[j],..). */
+/* The doublings are shared by all the terms. Variable time, so only for public k[j], as in signature */
+/* verification. Weierstrass and Edwards curves only. The result is not affine */
+	static ECP mulvt(ECP[][][] T,byte[][] d)
+	{
+		ECP S=new ECP();
+		int i,j,v,n=0;
+		boolean started=false;
+
+		for (j=0;j<d.length;j++)
+			n=Math.max(n,d[j].length);
+		for (i=n-1;i>=0;i--)
+		{
+			if (started) S.dbl();
+			for (j=0;j<d.length;j++)
+			{
+				if (i>=d[j].length || d[j][i]==0) continue;
+				v=d[j][i];
+				if (v>0) S.add(T[j][0][v/2]);
+				else S.add(T[j][1][-v/2]);
+				started=true;
+			}
+		}
+		return S;
+	}
+
+/* Pippenger window width for an n term multiMul() with multipliers of up to nb bits - the width c */
+/* that minimises the additions, about (nb/c+1).(n+2^c) with signed digits and 2^(c-1) buckets */
+	static int msmWindow(int n,int nb)
+	{
+		int c,best=2;
+		long cost,min=Long.MAX_VALUE;
+		for (c=2;c<=16;c++)
+		{
+			cost=(long)((nb+c-1)/c+1)*(n+(1L<<c));
+			if (cost<min)
+			{
+				min=cost;
+				best=c;
+			}
+		}
+		return best;
+	}
+
+/* d[i][j] is the j-th signed radix 2^c digit of k[i], least significant first, -2^(c-1)<=d[i][j]<2^(c-1) */
+	static short[][] msmDigits(BIG[] k,int c,int nw)
+	{
+		int i,j,v,cy,h=1<<(c-1);
+		short[][] d=new short[k.length][nw];
+		BIG t=new BIG();
+		for (i=0;i<k.length;i++)
+		{
+			t.copy(k[i]);
+			cy=0;
+			for (j=0;j<nw;j++)
+			{
+				v=t.lastbits(c)+cy;
+				t.fshr(c);
+				cy=0;
+				if (v>=h)
+				{
+					v-=2*h;
+					cy=1;
+				}
+				d[i][j]=(short)v;
+			}
+		}
+		return d;
+	}
+
+/* the chunks of windows of a multiMul() of nw windows, chunks[t]..chunks[t+1]-1 */
+	static int[] msmChunks(int nw,int chunks)
+	{
+		if (chunks>nw) chunks=nw;
+		if (chunks<1) chunks=1;
+		int[] b=new int[chunks+1];
+		for (int t=0;t<=chunks;t++)
+			b[t]=nw*t/chunks;
+		return b;
+	}
+
+/* the sum of k[i].P[i], found by Pippenger's bucket method, for public multipliers k[i] - not constant time. */
+/* Weierstrass and Edwards curves only */
+	public static ECP multiMul(ECP[] P,BIG[] k)
+	{
+		return multiMul(P,k,null,1);
+	}
+
+/* As multiMul(P,k), but with the windows split into chunks, which are summed as separate tasks on ex */
+/* The last chunk runs on the calling thread, and if anything fails the tasks still running are cancelled. */
+/* The points are made affine together first, so that they go into the buckets with mixed additions, */
+/* and the window width is chosen for the number of terms */
+	public static ECP multiMul(ECP[] P,BIG[] k,Executor ex,int chunks)
+	{
+		int i,n=0,nb=0;
+		ECP[] A=new ECP[P.length];
+		for (i=0;i<P.length;i++)
+		{
+			A[i]=new ECP(P[i]);
+			nb=Math.max(nb,k[i].nbits());
+		}
+		affineBatch(A);
+		BIG[] K=new BIG[P.length];
+		for (i=0;i<P.length;i++)
+		{
+			if (A[i].is_infinity()) continue;
+			A[n]=A[i]; K[n]=k[i]; n++;
+		}
+		if (n==0 || nb==0) return new ECP();
+		if (n<P.length)
+		{
+			ECP[] B=new ECP[n];
+			BIG[] L=new BIG[n];
+			System.arraycopy(A,0,B,0,n);
+			System.arraycopy(K,0,L,0,n);
+			A=B; K=L;
+		}
+
+		int c=msmWindow(n,nb);
+		int nw=(nb+c-1)/c+1;
+		short[][] d=msmDigits(K,c,nw);
+		int[] b=msmChunks(nw,ex==null?1:chunks);
+		int t,nc=b.length-1;
+
+		ArrayList<FutureTask<ECP>> tasks=new ArrayList<FutureTask<ECP>>();
+		for (t=0;t<nc-1;t++)
+		{
+			FutureTask<ECP> f=new FutureTask<ECP>(msmTask(A,d,c,b[t],b[t+1]));
+			ex.execute(f);
+			tasks.add(f);
+		}
+		ECP S;
+		try {
+			S=msmSum(A,d,c,b[nc-1],b[nc]);
+			for (t=nc-2;t>=0;t--)
+			{
+				for (i=0;i<c*(b[t+1]-b[t]);i++) S.dbl();
+				S.add(tasks.get(t).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable x=e.getCause();
+			if (x instanceof RuntimeException) throw (RuntimeException)x;
+			if (x instanceof Error) throw (Error)x;
+			throw new IllegalStateException(x);
+		} finally {
+			for (FutureTask<ECP> f : tasks) f.cancel(true);	/* no-op for those done - stops the rest if this failed */
+		}
+		S.affine();
+		return S;
+	}
+
+/* the sum of 2^(c.(j-lo)).W[j] over the windows lo<=j<hi, where W[j] is the sum of the buckets of window j. */
+/* The points A[i] are affine, and none is the point at infinity */
+	private static ECP msmSum(ECP[] A,short[][] d,int c,int lo,int hi)
+	{
+		int i,j,v,nb=1<<(c-1);
+		ECP[] B=new ECP[nb];
+		boolean[] u=new boolean[nb];
+		ECP S=new ECP();
+		ECP R=new ECP();
+		ECP W=new ECP();
+		ECP T=new ECP();
+
+		for (i=0;i<nb;i++) B[i]=new ECP();
+		for (j=hi-1;j>=lo;j--)
+		{
+			for (i=0;i<c;i++) S.dbl();
+			for (i=0;i<nb;i++) u[i]=false;
+			for (i=0;i<A.length;i++)
+			{
+				v=d[i][j];
+				if (v==0) continue;
+				T.copy(A[i]);
+				if (v<0)
+				{
+					T.neg();
+					v=-v;
+				}
+				if (u[v-1]) B[v-1].add(T,true);
+				else B[v-1].copy(T);
+				u[v-1]=true;
+			}
+/* W=sum of (i+1).B[i], as a running sum from the top */
+			R.inf(); W.inf();
+			boolean started=false;
+			for (i=nb-1;i>=0;i--)
+			{
+				if (u[i])
+				{
+					R.add(B[i]);
+					started=true;
+				}
+				if (started) W.add(R);
+			}
+			S.add(W);
+		}
+		return S;
+	}
+
+/* msmSum() as a task */
+	private static Callable<ECP> msmTask(final ECP[] A,final short[][] d,final int c,final int lo,final int hi)
+	{
+		return new Callable<ECP>() {
+			public ECP call()
+			{
+				return msmSum(A,d,c,lo,hi);
+			}
+		};
+	}
+
 // multiply a point by the curves cofactor
 	public void cfp()
 	{
@@ -960,14 +1517,14 @@ public final class ECP {
 			//affine();
 			return;
 		}
-		BIG c=new BIG(ROM.CURVE_Cof);
+		BIG c=CONSTANTS.CURVE_COF;
 		copy(mul(c));
 	}
 
 /* Map byte string to curve point */
 	public static ECP mapit(byte[] h)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=CONSTANTS.MODULUS;
 		BIG x=BIG.fromBytes(h);
 		x.mod(q);
 		ECP P;
@@ -989,6 +1546,86 @@ public final class ECP {
 		return P;
 	}
 
+/* constants of the Shallue-van de Woestijne map, as in the IETF hash to curve draft, where g(x)=x^3+Ax+B */
+/* Z is the first of 1,-1,2,-2,.. with g(Z)!=0, -(3Z^2+4A)/4g(Z) a non-zero square, and g(Z) or g(-Z/2) a square */
+	private static final class SVDW {
+		static final FP Z=new FP(0);
+		static final FP C1=new FP(0);	/* g(Z) */
+		static final FP C2=new FP(0);	/* -Z/2 */
+		static final FP C3=new FP(0);	/* sqrt(-g(Z).(3Z^2+4A)), even */
+		static final FP C4=new FP(0);	/* -4g(Z)/(3Z^2+4A) */
+		static {
+			FP gz,t,h,w;
+			search:
+			for (int c=1;;c++)
+			{
+				for (int s=0;s<2;s++)
+				{
+					Z.copy(new FP(c));
+					if (s==1) {Z.neg(); Z.norm();}
+					gz=RHS(Z);
+					t=new FP(Z); t.sqr(); t.imul(3);
+					if (ROM.CURVE_A==-3) t.sub(new FP(12));
+					t.norm();
+					h=new FP(gz); h.imul(4); h.inverse(); h.mul(t); h.neg(); h.norm();
+					w=new FP(Z); w.div2(); w.neg(); w.norm();
+					if (gz.iszilch() || h.jacobi()!=1) continue;
+					if (gz.jacobi()!=1 && RHS(w).jacobi()!=1) continue;
+					C1.copy(gz);
+					C2.copy(w);
+					w=new FP(gz); w.mul(t); w.neg(); w.norm();
+					C3.copy(w.sqrt());
+					if (C3.redc().parity()==1) {C3.neg(); C3.norm();}
+					t.inverse();
+					C4.copy(gz); C4.imul(4); C4.mul(t); C4.neg(); C4.norm();
+					break search;
+				}
+			}
+		}
+	}
+
+/* Shallue-van de Woestijne map of u to the curve. The cost is fixed - one inversion, two residuosity */
+/* tests and one square root - and nothing depends on u. Weierstrass curves only */
+	public static ECP svdw(FP u)
+	{
+		FP t1=new FP(u);
+		t1.sqr(); t1.mul(SVDW.C1);
+		FP t2=new FP(1); t2.add(t1); t2.norm();		/* 1+g(Z)u^2 */
+		t1.neg(); t1.add(new FP(1)); t1.norm();		/* 1-g(Z)u^2 */
+		FP t3=new FP(t1); t3.mul(t2); t3.inverse();	/* 1/0=0 */
+		FP t4=new FP(u); t4.mul(t1); t4.mul(t3); t4.mul(SVDW.C3);
+
+		FP x1=new FP(SVDW.C2); x1.sub(t4); x1.norm();
+		FP x2=new FP(SVDW.C2); x2.add(t4); x2.norm();
+		FP x3=new FP(t2);
+		x3.sqr(); x3.mul(t3); x3.sqr(); x3.mul(SVDW.C4); x3.add(SVDW.Z); x3.norm();
+
+		int e1=RHS(x1).qr();
+		int e2=RHS(x2).qr()&(1-e1);
+		x3.cmove(x1,e1);
+		x3.cmove(x2,e2);
+
+		FP y=RHS(x3).sqrt();
+		FP ny=new FP(y); ny.neg(); ny.norm();
+		y.cmove(ny,u.redc().parity()^y.redc().parity());
+
+		ECP P=new ECP();
+		P.x.copy(x3); P.y.copy(y); P.z.one();
+		return P;
+	}
+
+/* Map byte string to curve point in constant time, by svdw() and then clearing the cofactor. */
+/* Edwards and Montgomery curves fall back to mapit() */
+	public static ECP map2point(byte[] h)
+	{
+		if (CONFIG_CURVE.CURVETYPE!=CONFIG_CURVE.WEIERSTRASS) return mapit(h);
+		BIG x=BIG.fromBytes(h);
+		x.mod(CONSTANTS.MODULUS);
+		ECP P=svdw(new FP(x));
+		P.cfp();
+		return P;
+	}
+
 	public static ECP generator()
 	{
 		ECP G;
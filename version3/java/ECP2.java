@@ -21,6 +21,12 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public final class ECP2 {
 	private FP2 x;
 	private FP2 y;
@@ -83,14 +89,8 @@ public final class ECP2 {
 
 		babs=(babs-1)/2;
 
-		cmove(W[0],teq(babs,0));  // conditional move
-		cmove(W[1],teq(babs,1));
-		cmove(W[2],teq(babs,2));
-		cmove(W[3],teq(babs,3));
-		cmove(W[4],teq(babs,4));
-		cmove(W[5],teq(babs,5));
-		cmove(W[6],teq(babs,6));
-		cmove(W[7],teq(babs,7));
+		for (int i=0;i<W.length;i++)
+			cmove(W[i],teq(babs,i));  // conditional move
  
 		MP.copy(this);
 		MP.neg();
@@ -134,6 +134,27 @@ public final class ECP2 {
 		y.mul(z); y.reduce();
 		z.copy(one);
 	}
+/* convert all of P[] to affine, with one inversion shared by all the points. The points must be distinct objects */
+	public static void affineBatch(ECP2[] P)
+	{
+		int i,k,n=0;
+		ECP2[] Q=new ECP2[P.length];
+
+		for (i=0;i<P.length;i++)
+			if (!P[i].is_infinity()) Q[n++]=P[i];
+
+		FP2[] zs=new FP2[n];
+		FP2[] zi=new FP2[n];
+		for (k=0;k<n;k++)
+			zs[k]=Q[k].z;
+		FP2.batchInverse(zs,zi);
+		for (k=0;k<n;k++)
+		{
+			Q[k].x.mul(zi[k]); Q[k].x.reduce();
+			Q[k].y.mul(zi[k]); Q[k].y.reduce();
+			Q[k].z.one();
+		}
+	}
 /* extract affine x as FP2 */
 	public FP2 getX()
 	{
@@ -217,7 +238,7 @@ public final class ECP2 {
 		//x.norm();
 		FP2 r=new FP2(x);
 		r.sqr();
-		FP2 b=new FP2(new BIG(ROM.CURVE_B));
+		FP2 b=new FP2(CONSTANTS.CURVE_B);
 
 		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
 		{
@@ -316,6 +337,12 @@ public final class ECP2 {
 
 /* this+=Q - return 0 for add, 1 for double, -1 for O */
 	public int add(ECP2 Q) {
+		return add(Q,false);
+	}
+
+/* this+=Q, where Q is affine (z=1) and not the point at infinity if aff is set, which saves a multiplication. */
+/* Any this is allowed */
+	int add(ECP2 Q,boolean aff) {
 
 		int b=3*ROM.CURVE_B_I;
 		FP2 t0=new FP2(x);
@@ -324,7 +351,7 @@ public final class ECP2 {
 		t1.mul(Q.y);		 // y.Q.y
 
 		FP2 t2=new FP2(z);
-		t2.mul(Q.z);
+		if (!aff) t2.mul(Q.z);
 		FP2 t3=new FP2(x);
 		t3.add(y); t3.norm();          //t3=X1+Y1
 		FP2 t4=new FP2(Q.x);            
@@ -337,27 +364,41 @@ public final class ECP2 {
 		{		
 			t3.mul_ip();  t3.norm();         //t3=(X1+Y1)(X2+Y2)-(X1.X2+Y1.Y2) = X1.Y2+X2.Y1
 		}
-		t4.copy(y);                    
-		t4.add(z); t4.norm();			//t4=Y1+Z1
 		FP2 x3=new FP2(Q.y);
-		x3.add(Q.z); x3.norm();			//x3=Y2+Z2
+		FP2 y3=new FP2(Q.x);
+		if (aff)
+		{
+			t4.copy(Q.y); t4.mul(z); t4.add(y); t4.norm();	//t4=Y1+Y2.Z1, as Z2=1
+		}
+		else
+		{
+			t4.copy(y);                    
+			t4.add(z); t4.norm();			//t4=Y1+Z1
+			x3.add(Q.z); x3.norm();			//x3=Y2+Z2
 
-		t4.mul(x3);						//t4=(Y1+Z1)(Y2+Z2)
-		x3.copy(t1);					//
-		x3.add(t2);						//X3=Y1.Y2+Z1.Z2
+			t4.mul(x3);						//t4=(Y1+Z1)(Y2+Z2)
+			x3.copy(t1);					//
+			x3.add(t2);						//X3=Y1.Y2+Z1.Z2
 	
-		t4.sub(x3); t4.norm(); 
+			t4.sub(x3); t4.norm(); 
+		}
 		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
 		{	
 			t4.mul_ip(); t4.norm();          //t4=(Y1+Z1)(Y2+Z2) - (Y1.Y2+Z1.Z2) = Y1.Z2+Y2.Z1
 		}
-		x3.copy(x); x3.add(z); x3.norm();	// x3=X1+Z1
-		FP2 y3=new FP2(Q.x);				
-		y3.add(Q.z); y3.norm();				// y3=X2+Z2
-		x3.mul(y3);							// x3=(X1+Z1)(X2+Z2)
-		y3.copy(t0);
-		y3.add(t2);							// y3=X1.X2+Z1+Z2
-		y3.rsub(x3); y3.norm();				// y3=(X1+Z1)(X2+Z2) - (X1.X2+Z1.Z2) = X1.Z2+X2.Z1
+		if (aff)
+		{
+			y3.mul(z); y3.add(x); y3.norm();				// y3=X1+X2.Z1, as Z2=1
+		}
+		else
+		{
+			x3.copy(x); x3.add(z); x3.norm();	// x3=X1+Z1
+			y3.add(Q.z); y3.norm();				// y3=X2+Z2
+			x3.mul(y3);							// x3=(X1+Z1)(X2+Z2)
+			y3.copy(t0);
+			y3.add(t2);							// y3=X1.X2+Z1+Z2
+			y3.rsub(x3); y3.norm();				// y3=(X1+Z1)(X2+Z2) - (X1.X2+Z1.Z2) = X1.Z2+X2.Z1
+		}
 
 		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
 		{
@@ -413,28 +454,52 @@ public final class ECP2 {
 		y.mul(X);
 	}
 
-/* P*=e */
+/* this*|x| for the curve parameter x, by the signed addition chain of its NAF. Variable time, as x is public */
+	public ECP2 mulByX()
+	{
+		byte[] d=PFCONSTANTS.CURVE_BNX_NAF;
+		ECP2 P=new ECP2(this);
+		ECP2 M=new ECP2(this);
+		M.neg();
+		for (int i=1;i<d.length;i++)
+		{
+			P.dbl();
+			if (d[i]==1) P.add(this);
+			if (d[i]==-1) P.add(M);
+		}
+		return P;
+	}
+
+/* P*=e, with signed windows of MUL_WINDOW bits */
 	public ECP2 mul(BIG e)
 	{
-/* fixed size windows */
-		int i,b,nb,m,s,ns;
+		return mul(e,CONFIG_CURVE.MUL_WINDOW);
+	}
+
+/* P*=e, with e regularly recoded into signed windows of wd bits. For a given wd the time does not depend */
+/* on e - every window adds one of the 2^(wd-1) odd multiples of P, picked out by cmove. */
+/* IllegalArgumentException unless 2<=wd<=6 */
+	public ECP2 mul(BIG e,int wd)
+	{
+		if (wd<2 || wd>6) throw new IllegalArgumentException("window width "+wd);
+		int i,j,nb,s,ns,nw=1<<(wd-1);
 		BIG mt=new BIG();
 		BIG t=new BIG();
 		ECP2 P=new ECP2();
 		ECP2 Q=new ECP2();
 		ECP2 C=new ECP2();
-		ECP2[] W=new ECP2[8];
-		byte[] w=new byte[1+(BIG.NLEN*CONFIG_BIG.BASEBITS+3)/4];
+		ECP2[] W=new ECP2[nw];
+		byte[] w=new byte[2+(BIG.NLEN*CONFIG_BIG.BASEBITS+wd-1)/wd];
 
 		if (is_infinity()) return new ECP2();
 
-/* precompute table */
+/* precompute table of odd multiples P,3P,5P.. */
 		Q.copy(this);
 		Q.dbl();
 		W[0]=new ECP2();
 		W[0].copy(this);
 
-		for (i=1;i<8;i++)
+		for (i=1;i<nw;i++)
 		{
 			W[i]=new ECP2();
 			W[i].copy(W[i-1]);
@@ -449,24 +514,94 @@ public final class ECP2 {
 		Q.cmove(this,ns);
 		C.copy(Q);
 
-		nb=1+(t.nbits()+3)/4;
-/* convert exponent to signed 4-bit window */
+		nb=1+(t.nbits()+wd-1)/wd;
+/* convert exponent to signed wd-bit windows, all odd */
 		for (i=0;i<nb;i++)
 		{
-			w[i]=(byte)(t.lastbits(5)-16);
+			w[i]=(byte)(t.lastbits(wd+1)-2*nw);
 			t.dec(w[i]); t.norm();
-			t.fshr(4);	
+			t.fshr(wd);	
 		}
-		w[nb]=(byte)t.lastbits(5);
+		w[nb]=(byte)t.lastbits(wd+1);
 	
 		P.copy(W[(w[nb]-1)/2]);  
 		for (i=nb-1;i>=0;i--)
 		{
 			Q.select(W,w[i]);
-			P.dbl();
-			P.dbl();
-			P.dbl();
-			P.dbl();
+			for (j=0;j<wd;j++)
+				P.dbl();
+			P.add(Q);
+		}
+		P.sub(C);
+		P.affine();
+		return P;
+	}
+
+/* Fixed base table for the generator G, built once, on first use. */
+/* T[j][i]=(2i+1).16^j.G, one row for each signed 4-bit window of a multiplier less than the group order */
+	private static final class GenTable {
+		static final ECP2[][] T=build();
+
+		private static ECP2[][] build()
+		{
+			int i,j,nw=2+(CONSTANTS.CURVE_ORDER.nbits()+4)/4;
+			ECP2[][] T=new ECP2[nw][8];
+			ECP2[] A=new ECP2[8*nw];
+			ECP2 B=generator();
+			ECP2 D=new ECP2();
+
+			for (j=0;j<nw;j++)
+			{
+				D.copy(B); D.dbl();
+				T[j][0]=new ECP2(); T[j][0].copy(B);
+				for (i=1;i<8;i++)
+				{
+					T[j][i]=new ECP2();
+					T[j][i].copy(T[j][i-1]);
+					T[j][i].add(D);
+				}
+				for (i=0;i<8;i++) A[8*j+i]=T[j][i];
+				for (i=0;i<4;i++) B.dbl();
+			}
+			affineBatch(A);
+			return T;
+		}
+	}
+
+/* return e.G, where G is the generator. As mul(), but with the windows looked up in the */
+/* fixed base table, so there are no doublings, and a fixed number of additions */
+	public static ECP2 genmul(BIG e)
+	{
+		ECP2[][] T=GenTable.T;
+		int i,s,ns,nb=T.length-1;
+		BIG t=new BIG(e);
+		BIG mt=new BIG();
+		ECP2 P=new ECP2();
+		ECP2 Q=new ECP2();
+		ECP2 C=new ECP2();
+		byte[] w=new byte[nb+1];
+
+		t.mod(CONSTANTS.CURVE_ORDER);
+
+/* make exponent odd - add 2G if even, G if odd */
+		s=t.parity();
+		t.inc(1); t.norm(); ns=t.parity(); mt.copy(t); mt.inc(1); mt.norm();
+		t.cmove(mt,s);
+		C.copy(T[0][0]); C.dbl();
+		C.cmove(T[0][0],ns);
+
+/* convert exponent to signed 4-bit window */
+		for (i=0;i<nb;i++)
+		{
+			w[i]=(byte)(t.lastbits(5)-16);
+			t.dec(w[i]); t.norm();
+			t.fshr(4);	
+		}
+		w[nb]=(byte)t.lastbits(5);
+
+		for (i=0;i<=nb;i++)
+		{
+			Q.select(T[i],w[i]);
 			P.add(Q);
 		}
 		P.sub(C);
@@ -561,7 +696,7 @@ public final class ECP2 {
 /* needed for SOK */
 	public static ECP2 mapit(byte[] h)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=CONSTANTS.MODULUS;
 		BIG x=BIG.fromBytes(h);
 		BIG one=new BIG(1);
 		FP2 X;
@@ -575,17 +710,15 @@ public final class ECP2 {
 			x.inc(1); x.norm();
 		}
 
-		BIG Fra=new BIG(ROM.Fra);
-		BIG Frb=new BIG(ROM.Frb);
-		X=new FP2(Fra,Frb);
-
-		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
-		{
-			X.inverse();
-			X.norm();
-		}
+		Q.cfp();
+		return Q;
+	}
 
-		x=new BIG(ROM.CURVE_Bnx);
+/* multiply a point by the cofactor of G2 */
+	public void cfp()
+	{
+		FP2 X=PFCONSTANTS.FROB_TWIST;
+		ECP2 Q=this;
 
 /* Fast Hashing to G2 - Fuentes-Castaneda, Knapp and Rodriguez-Henriquez */
 
@@ -594,7 +727,7 @@ public final class ECP2 {
 			ECP2 T,K;
 
 			T=new ECP2(); T.copy(Q);
-			T=T.mul(x); 
+			T=T.mulByX(); 
 			
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
@@ -616,8 +749,8 @@ public final class ECP2 {
 
 		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BLS)
 		{
-			ECP2 xQ=Q.mul(x);
-			ECP2 x2Q=xQ.mul(x);
+			ECP2 xQ=Q.mulByX();
+			ECP2 x2Q=xQ.mulByX();
 
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
@@ -638,6 +771,80 @@ public final class ECP2 {
 			Q.add(xQ);
 		}
 		Q.affine();
+	}
+
+/* constants of the Shallue-van de Woestijne map, as for ECP but over FP2 with A=0 */
+	private static final class SVDW {
+		static final FP2 Z=new FP2(0);
+		static final FP2 C1=new FP2(0);	/* g(Z) */
+		static final FP2 C2=new FP2(0);	/* -Z/2 */
+		static final FP2 C3=new FP2(0);	/* sqrt(-3g(Z)Z^2), even */
+		static final FP2 C4=new FP2(0);	/* -4g(Z)/3Z^2 */
+		static {
+			FP2 gz,t,h,w;
+			search:
+			for (int c=1;;c++)
+			{
+				for (int s=0;s<2;s++)
+				{
+					Z.copy(new FP2(c));
+					if (s==1) {Z.neg(); Z.norm();}
+					gz=RHS(Z);
+					t=new FP2(Z); t.sqr(); t.imul(3); t.norm();
+					h=new FP2(gz); h.imul(4); h.norm(); h.inverse(); h.mul(t); h.neg(); h.norm();
+					w=new FP2(Z); w.div2(); w.neg(); w.norm();
+					if (gz.iszilch() || h.qr()==0) continue;
+					if (gz.qr()==0 && RHS(w).qr()==0) continue;
+					C1.copy(gz);
+					C2.copy(w);
+					C3.copy(gz); C3.mul(t); C3.neg(); C3.norm();
+					C3.sqrt();
+					if (C3.sgn0()==1) {C3.neg(); C3.norm();}
+					t.inverse();
+					C4.copy(gz); C4.imul(4); C4.norm(); C4.mul(t); C4.neg(); C4.norm();
+					break search;
+				}
+			}
+		}
+	}
+
+/* Shallue-van de Woestijne map of u to the twisted curve, in constant time as ECP.svdw() */
+	public static ECP2 svdw(FP2 u)
+	{
+		FP2 t1=new FP2(u);
+		t1.sqr(); t1.mul(SVDW.C1);
+		FP2 t2=new FP2(1); t2.add(t1); t2.norm();	/* 1+g(Z)u^2 */
+		t1.neg(); t1.add(new FP2(1)); t1.norm();	/* 1-g(Z)u^2 */
+		FP2 t3=new FP2(t1); t3.mul(t2); t3.inverse();	/* 1/0=0 */
+		FP2 t4=new FP2(u); t4.mul(t1); t4.mul(t3); t4.mul(SVDW.C3);
+
+		FP2 x1=new FP2(SVDW.C2); x1.sub(t4); x1.norm();
+		FP2 x2=new FP2(SVDW.C2); x2.add(t4); x2.norm();
+		FP2 x3=new FP2(t2);
+		x3.sqr(); x3.mul(t3); x3.sqr(); x3.mul(SVDW.C4); x3.add(SVDW.Z); x3.norm();
+
+		int e1=RHS(x1).qr();
+		int e2=RHS(x2).qr()&(1-e1);
+		x3.cmove(x1,e1);
+		x3.cmove(x2,e2);
+
+		FP2 y=RHS(x3);
+		y.sqrt();
+		FP2 ny=new FP2(y); ny.neg(); ny.norm();
+		y.cmove(ny,u.sgn0()^y.sgn0());
+
+		ECP2 P=new ECP2();
+		P.x.copy(x3); P.y.copy(y); P.z.one();
+		return P;
+	}
+
+/* Map byte string to a point in G2 in constant time, by svdw() of (h,0) and then clearing the cofactor */
+	public static ECP2 map2point(byte[] h)
+	{
+		BIG x=BIG.fromBytes(h);
+		x.mod(CONSTANTS.MODULUS);
+		ECP2 Q=svdw(new FP2(x));
+		Q.cfp();
 		return Q;
 	}
 
@@ -646,5 +853,134 @@ public final class ECP2 {
 		return new ECP2(new FP2(new BIG(ROM.CURVE_Pxa),new BIG(ROM.CURVE_Pxb)),new FP2(new BIG(ROM.CURVE_Pya),new BIG(ROM.CURVE_Pyb)));
 	}
 
+/* the sum of k[i].P[i], found by Pippenger's bucket method, for public multipliers k[i] - not constant time */
+	public static ECP2 multiMul(ECP2[] P,BIG[] k)
+	{
+		return multiMul(P,k,null,1);
+	}
+
+/* As multiMul(P,k), but with the windows split into chunks, which are summed as separate tasks on ex */
+/* The last chunk runs on the calling thread, and if anything fails the tasks still running are cancelled. */
+/* The points are made affine together first, so that they go into the buckets with mixed additions, */
+/* and the window width is chosen for the number of terms */
+	public static ECP2 multiMul(ECP2[] P,BIG[] k,Executor ex,int chunks)
+	{
+		int i,n=0,nb=0;
+		ECP2[] A=new ECP2[P.length];
+		for (i=0;i<P.length;i++)
+		{
+			A[i]=new ECP2(P[i]);
+			nb=Math.max(nb,k[i].nbits());
+		}
+		affineBatch(A);
+		BIG[] K=new BIG[P.length];
+		for (i=0;i<P.length;i++)
+		{
+			if (A[i].is_infinity()) continue;
+			A[n]=A[i]; K[n]=k[i]; n++;
+		}
+		if (n==0 || nb==0) return new ECP2();
+		if (n<P.length)
+		{
+			ECP2[] B=new ECP2[n];
+			BIG[] L=new BIG[n];
+			System.arraycopy(A,0,B,0,n);
+			System.arraycopy(K,0,L,0,n);
+			A=B; K=L;
+		}
+
+		int c=ECP.msmWindow(n,nb);
+		int nw=(nb+c-1)/c+1;
+		short[][] d=ECP.msmDigits(K,c,nw);
+		int[] b=ECP.msmChunks(nw,ex==null?1:chunks);
+		int t,nc=b.length-1;
+
+		ArrayList<FutureTask<ECP2>> tasks=new ArrayList<FutureTask<ECP2>>();
+		for (t=0;t<nc-1;t++)
+		{
+			FutureTask<ECP2> f=new FutureTask<ECP2>(msmTask(A,d,c,b[t],b[t+1]));
+			ex.execute(f);
+			tasks.add(f);
+		}
+		ECP2 S;
+		try {
+			S=msmSum(A,d,c,b[nc-1],b[nc]);
+			for (t=nc-2;t>=0;t--)
+			{
+				for (i=0;i<c*(b[t+1]-b[t]);i++) S.dbl();
+				S.add(tasks.get(t).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable x=e.getCause();
+			if (x instanceof RuntimeException) throw (RuntimeException)x;
+			if (x instanceof Error) throw (Error)x;
+			throw new IllegalStateException(x);
+		} finally {
+			for (FutureTask<ECP2> f : tasks) f.cancel(true);	/* no-op for those done - stops the rest if this failed */
+		}
+		S.affine();
+		return S;
+	}
+
+/* the sum of 2^(c.(j-lo)).W[j] over the windows lo<=j<hi, where W[j] is the sum of the buckets of window j. */
+/* The points A[i] are affine, and none is the point at infinity */
+	private static ECP2 msmSum(ECP2[] A,short[][] d,int c,int lo,int hi)
+	{
+		int i,j,v,nb=1<<(c-1);
+		ECP2[] B=new ECP2[nb];
+		boolean[] u=new boolean[nb];
+		ECP2 S=new ECP2();
+		ECP2 R=new ECP2();
+		ECP2 W=new ECP2();
+		ECP2 T=new ECP2();
 
-}
\ No newline at end of file
+		for (i=0;i<nb;i++) B[i]=new ECP2();
+		for (j=hi-1;j>=lo;j--)
+		{
+			for (i=0;i<c;i++) S.dbl();
+			for (i=0;i<nb;i++) u[i]=false;
+			for (i=0;i<A.length;i++)
+			{
+				v=d[i][j];
+				if (v==0) continue;
+				T.copy(A[i]);
+				if (v<0)
+				{
+					T.neg();
+					v=-v;
+				}
+				if (u[v-1]) B[v-1].add(T,true);
+				else B[v-1].copy(T);
+				u[v-1]=true;
+			}
+/* W=sum of (i+1).B[i], as a running sum from the top */
+			R.inf(); W.inf();
+			boolean started=false;
+			for (i=nb-1;i>=0;i--)
+			{
+				if (u[i])
+				{
+					R.add(B[i]);
+					started=true;
+				}
+				if (started) W.add(R);
+			}
+			S.add(W);
+		}
+		return S;
+	}
+
+/* msmSum() as a task */
+	private static Callable<ECP2> msmTask(final ECP2[] A,final short[][] d,final int c,final int lo,final int hi)
+	{
+		return new Callable<ECP2>() {
+			public ECP2 call()
+			{
+				return msmSum(A,d,c,lo,hi);
+			}
+		};
+	}
+}
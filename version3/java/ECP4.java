@@ -21,6 +21,12 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public final class ECP4 {
 	private FP4 x;
 	private FP4 y;
@@ -82,14 +88,8 @@ public final class ECP4 {
 
 		babs=(babs-1)/2;
 
-		cmove(W[0],teq(babs,0));  // conditional move
-		cmove(W[1],teq(babs,1));
-		cmove(W[2],teq(babs,2));
-		cmove(W[3],teq(babs,3));
-		cmove(W[4],teq(babs,4));
-		cmove(W[5],teq(babs,5));
-		cmove(W[6],teq(babs,6));
-		cmove(W[7],teq(babs,7));
+		for (int i=0;i<W.length;i++)
+			cmove(W[i],teq(babs,i));  // conditional move
  
 		MP.copy(this);
 		MP.neg();
@@ -135,6 +135,27 @@ public final class ECP4 {
 		z.copy(one);
 	}
 
+/* convert all of P[] to affine, with one inversion shared by all the points. The points must be distinct objects */
+	public static void affineBatch(ECP4[] P)
+	{
+		int i,k,n=0;
+		ECP4[] Q=new ECP4[P.length];
+
+		for (i=0;i<P.length;i++)
+			if (!P[i].is_infinity()) Q[n++]=P[i];
+
+		FP4[] zs=new FP4[n];
+		FP4[] zi=new FP4[n];
+		for (k=0;k<n;k++)
+			zs[k]=Q[k].z;
+		FP4.batchInverse(zs,zi);
+		for (k=0;k<n;k++)
+		{
+			Q[k].x.mul(zi[k]); Q[k].x.reduce();
+			Q[k].y.mul(zi[k]); Q[k].y.reduce();
+			Q[k].z.one();
+		}
+	}
 /* extract affine x as FP4 */
 	public FP4 getX()
 	{
@@ -171,6 +192,7 @@ public final class ECP4 {
 		byte[] t=new byte[CONFIG_BIG.MODBYTES];
 		ECP4 W=new ECP4(this);
 		int MB=CONFIG_BIG.MODBYTES;
+		W.affine();
 
 		W.x.geta().getA().toBytes(t);
 		for (int i=0;i<MB;i++) 
@@ -255,7 +277,7 @@ public final class ECP4 {
 	public static FP4 RHS(FP4 x) {
 		FP4 r=new FP4(x);
 		r.sqr();
-		FP4 b=new FP4(new FP2(new BIG(ROM.CURVE_B)));
+		FP4 b=new FP4(new FP2(CONSTANTS.CURVE_B));
 
 		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
 		{
@@ -352,6 +374,12 @@ public final class ECP4 {
 
 /* this+=Q - return 0 for add, 1 for double, -1 for O */
 	public int add(ECP4 Q) {
+		return add(Q,false);
+	}
+
+/* this+=Q, where Q is affine (z=1) and not the point at infinity if aff is set, which saves a multiplication. */
+/* Any this is allowed */
+	int add(ECP4 Q,boolean aff) {
 
 		int b=3*ROM.CURVE_B_I;
 		FP4 t0=new FP4(x);
@@ -360,7 +388,7 @@ public final class ECP4 {
 		t1.mul(Q.y);		 // y.Q.y
 
 		FP4 t2=new FP4(z);
-		t2.mul(Q.z);
+		if (!aff) t2.mul(Q.z);
 		FP4 t3=new FP4(x);
 		t3.add(y); t3.norm();          //t3=X1+Y1
 		FP4 t4=new FP4(Q.x);            
@@ -373,27 +401,41 @@ public final class ECP4 {
 		{		
 			t3.times_i();         //t3=(X1+Y1)(X2+Y2)-(X1.X2+Y1.Y2) = X1.Y2+X2.Y1
 		}
-		t4.copy(y);                    
-		t4.add(z); t4.norm();			//t4=Y1+Z1
 		FP4 x3=new FP4(Q.y);
-		x3.add(Q.z); x3.norm();			//x3=Y2+Z2
+		FP4 y3=new FP4(Q.x);
+		if (aff)
+		{
+			t4.copy(Q.y); t4.mul(z); t4.add(y); t4.norm();	//t4=Y1+Y2.Z1, as Z2=1
+		}
+		else
+		{
+			t4.copy(y);                    
+			t4.add(z); t4.norm();			//t4=Y1+Z1
+			x3.add(Q.z); x3.norm();			//x3=Y2+Z2
 
-		t4.mul(x3);						//t4=(Y1+Z1)(Y2+Z2)
-		x3.copy(t1);					//
-		x3.add(t2);						//X3=Y1.Y2+Z1.Z2
+			t4.mul(x3);						//t4=(Y1+Z1)(Y2+Z2)
+			x3.copy(t1);					//
+			x3.add(t2);						//X3=Y1.Y2+Z1.Z2
 	
-		t4.sub(x3); t4.norm(); 
+			t4.sub(x3); t4.norm(); 
+		}
 		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
 		{	
 			t4.times_i();           //t4=(Y1+Z1)(Y2+Z2) - (Y1.Y2+Z1.Z2) = Y1.Z2+Y2.Z1
 		}
-		x3.copy(x); x3.add(z); x3.norm();	// x3=X1+Z1
-		FP4 y3=new FP4(Q.x);				
-		y3.add(Q.z); y3.norm();				// y3=X2+Z2
-		x3.mul(y3);							// x3=(X1+Z1)(X2+Z2)
-		y3.copy(t0);
-		y3.add(t2);							// y3=X1.X2+Z1+Z2
-		y3.rsub(x3); y3.norm();				// y3=(X1+Z1)(X2+Z2) - (X1.X2+Z1.Z2) = X1.Z2+X2.Z1
+		if (aff)
+		{
+			y3.mul(z); y3.add(x); y3.norm();				// y3=X1+X2.Z1, as Z2=1
+		}
+		else
+		{
+			x3.copy(x); x3.add(z); x3.norm();	// x3=X1+Z1
+			y3.add(Q.z); y3.norm();				// y3=X2+Z2
+			x3.mul(y3);							// x3=(X1+Z1)(X2+Z2)
+			y3.copy(t0);
+			y3.add(t2);							// y3=X1.X2+Z1+Z2
+			y3.rsub(x3); y3.norm();				// y3=(X1+Z1)(X2+Z2) - (X1.X2+Z1.Z2) = X1.Z2+X2.Z1
+		}
 
 		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
 		{
@@ -435,9 +477,7 @@ public final class ECP4 {
 	}
 
 	public static FP2[] frob_constants() {
-			BIG Fra=new BIG(ROM.Fra);
-			BIG Frb=new BIG(ROM.Frb);
-			FP2 X=new FP2(Fra,Frb);
+			FP2 X=PFCONSTANTS.FROB;
 
 			FP2 F0=new FP2(X); F0.sqr();
 			FP2 F2=new FP2(F0);
@@ -473,28 +513,52 @@ public final class ECP4 {
 		}
 	}
 
-/* P*=e */
+/* this*|x| for the curve parameter x, by the signed addition chain of its NAF. Variable time, as x is public */
+	public ECP4 mulByX()
+	{
+		byte[] d=PFCONSTANTS.CURVE_BNX_NAF;
+		ECP4 P=new ECP4(this);
+		ECP4 M=new ECP4(this);
+		M.neg();
+		for (int i=1;i<d.length;i++)
+		{
+			P.dbl();
+			if (d[i]==1) P.add(this);
+			if (d[i]==-1) P.add(M);
+		}
+		return P;
+	}
+
+/* P*=e, with signed windows of MUL_WINDOW bits */
 	public ECP4 mul(BIG e)
 	{
-/* fixed size windows */
-		int i,b,nb,m,s,ns;
+		return mul(e,CONFIG_CURVE.MUL_WINDOW);
+	}
+
+/* P*=e, with e regularly recoded into signed windows of wd bits. For a given wd the time does not depend */
+/* on e - every window adds one of the 2^(wd-1) odd multiples of P, picked out by cmove. */
+/* IllegalArgumentException unless 2<=wd<=6 */
+	public ECP4 mul(BIG e,int wd)
+	{
+		if (wd<2 || wd>6) throw new IllegalArgumentException("window width "+wd);
+		int i,j,nb,s,ns,nw=1<<(wd-1);
 		BIG mt=new BIG();
 		BIG t=new BIG();
 		ECP4 P=new ECP4();
 		ECP4 Q=new ECP4();
 		ECP4 C=new ECP4();
-		ECP4[] W=new ECP4[8];
-		byte[] w=new byte[1+(BIG.NLEN*CONFIG_BIG.BASEBITS+3)/4];
+		ECP4[] W=new ECP4[nw];
+		byte[] w=new byte[2+(BIG.NLEN*CONFIG_BIG.BASEBITS+wd-1)/wd];
 
 		if (is_infinity()) return new ECP4();
 
-/* precompute table */
+/* precompute table of odd multiples P,3P,5P.. */
 		Q.copy(this);
 		Q.dbl();
 		W[0]=new ECP4();
 		W[0].copy(this);
 
-		for (i=1;i<8;i++)
+		for (i=1;i<nw;i++)
 		{
 			W[i]=new ECP4();
 			W[i].copy(W[i-1]);
@@ -509,24 +573,22 @@ public final class ECP4 {
 		Q.cmove(this,ns);
 		C.copy(Q);
 
-		nb=1+(t.nbits()+3)/4;
-/* convert exponent to signed 4-bit window */
+		nb=1+(t.nbits()+wd-1)/wd;
+/* convert exponent to signed wd-bit windows, all odd */
 		for (i=0;i<nb;i++)
 		{
-			w[i]=(byte)(t.lastbits(5)-16);
+			w[i]=(byte)(t.lastbits(wd+1)-2*nw);
 			t.dec(w[i]); t.norm();
-			t.fshr(4);	
+			t.fshr(wd);	
 		}
-		w[nb]=(byte)t.lastbits(5);
+		w[nb]=(byte)t.lastbits(wd+1);
 	
 		P.copy(W[(w[nb]-1)/2]);  
 		for (i=nb-1;i>=0;i--)
 		{
 			Q.select(W,w[i]);
-			P.dbl();
-			P.dbl();
-			P.dbl();
-			P.dbl();
+			for (j=0;j<wd;j++)
+				P.dbl();
 			P.add(Q);
 		}
 		P.sub(C);
@@ -661,7 +723,7 @@ public final class ECP4 {
 /* needed for SOK */
 	public static ECP4 mapit(byte[] h)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=CONSTANTS.MODULUS;
 		BIG x=BIG.fromBytes(h);
 		BIG one=new BIG(1);
 		FP4 X;
@@ -678,14 +740,13 @@ public final class ECP4 {
 		}
 
 		FP2[] F=ECP4.frob_constants();
-		x=new BIG(ROM.CURVE_Bnx);
 
 /* Efficient hash maps to G2 on BLS curves - Budroni, Pintore */
 
-		ECP4 xQ=Q.mul(x);
-		ECP4 x2Q=xQ.mul(x);
-		ECP4 x3Q=x2Q.mul(x);
-		ECP4 x4Q=x3Q.mul(x);
+		ECP4 xQ=Q.mulByX();
+		ECP4 x2Q=xQ.mulByX();
+		ECP4 x3Q=x2Q.mulByX();
+		ECP4 x4Q=x3Q.mulByX();
 
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 		{
@@ -733,4 +794,134 @@ public final class ECP4 {
 					new BIG(ROM.CURVE_Pyba),new BIG(ROM.CURVE_Pybb))));
 	}
 
+/* the sum of k[i].P[i], found by Pippenger's bucket method, for public multipliers k[i] - not constant time */
+	public static ECP4 multiMul(ECP4[] P,BIG[] k)
+	{
+		return multiMul(P,k,null,1);
+	}
+
+/* As multiMul(P,k), but with the windows split into chunks, which are summed as separate tasks on ex */
+/* The last chunk runs on the calling thread, and if anything fails the tasks still running are cancelled. */
+/* The points are made affine together first, so that they go into the buckets with mixed additions, */
+/* and the window width is chosen for the number of terms */
+	public static ECP4 multiMul(ECP4[] P,BIG[] k,Executor ex,int chunks)
+	{
+		int i,n=0,nb=0;
+		ECP4[] A=new ECP4[P.length];
+		for (i=0;i<P.length;i++)
+		{
+			A[i]=new ECP4(P[i]);
+			nb=Math.max(nb,k[i].nbits());
+		}
+		affineBatch(A);
+		BIG[] K=new BIG[P.length];
+		for (i=0;i<P.length;i++)
+		{
+			if (A[i].is_infinity()) continue;
+			A[n]=A[i]; K[n]=k[i]; n++;
+		}
+		if (n==0 || nb==0) return new ECP4();
+		if (n<P.length)
+		{
+			ECP4[] B=new ECP4[n];
+			BIG[] L=new BIG[n];
+			System.arraycopy(A,0,B,0,n);
+			System.arraycopy(K,0,L,0,n);
+			A=B; K=L;
+		}
+
+		int c=ECP.msmWindow(n,nb);
+		int nw=(nb+c-1)/c+1;
+		short[][] d=ECP.msmDigits(K,c,nw);
+		int[] b=ECP.msmChunks(nw,ex==null?1:chunks);
+		int t,nc=b.length-1;
+
+		ArrayList<FutureTask<ECP4>> tasks=new ArrayList<FutureTask<ECP4>>();
+		for (t=0;t<nc-1;t++)
+		{
+			FutureTask<ECP4> f=new FutureTask<ECP4>(msmTask(A,d,c,b[t],b[t+1]));
+			ex.execute(f);
+			tasks.add(f);
+		}
+		ECP4 S;
+		try {
+			S=msmSum(A,d,c,b[nc-1],b[nc]);
+			for (t=nc-2;t>=0;t--)
+			{
+				for (i=0;i<c*(b[t+1]-b[t]);i++) S.dbl();
+				S.add(tasks.get(t).get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable x=e.getCause();
+			if (x instanceof RuntimeException) throw (RuntimeException)x;
+			if (x instanceof Error) throw (Error)x;
+			throw new IllegalStateException(x);
+		} finally {
+			for (FutureTask<ECP4> f : tasks) f.cancel(true);	/* no-op for those done - stops the rest if this failed */
+		}
+		S.affine();
+		return S;
+	}
+
+/* the sum of 2^(c.(j-lo)).W[j] over the windows lo<=j<hi, where W[j] is the sum of the buckets of window j. */
+/* The points A[i] are affine, and none is the point at infinity */
+	private static ECP4 msmSum(ECP4[] A,short[][] d,int c,int lo,int hi)
+	{
+		int i,j,v,nb=1<<(c-1);
+		ECP4[] B=new ECP4[nb];
+		boolean[] u=new boolean[nb];
+		ECP4 S=new ECP4();
+		ECP4 R=new ECP4();
+		ECP4 W=new ECP4();
+		ECP4 T=new ECP4();
+
+		for (i=0;i<nb;i++) B[i]=new ECP4();
+		for (j=hi-1;j>=lo;j--)
+		{
+			for (i=0;i<c;i++) S.dbl();
+			for (i=0;i<nb;i++) u[i]=false;
+			for (i=0;i<A.length;i++)
+			{
+				v=d[i][j];
+				if (v==0) continue;
+				T.copy(A[i]);
+				if (v<0)
+				{
+					T.neg();
+					v=-v;
+				}
+				if (u[v-1]) B[v-1].add(T,true);
+				else B[v-1].copy(T);
+				u[v-1]=true;
+			}
+/* W=sum of (i+1).B[i], as a running sum from the top */
+			R.inf(); W.inf();
+			boolean started=false;
+			for (i=nb-1;i>=0;i--)
+			{
+				if (u[i])
+				{
+					R.add(B[i]);
+					started=true;
+				}
+				if (started) W.add(R);
+			}
+			S.add(W);
+		}
+		return S;
+	}
+
+/* msmSum() as a task */
+	private static Callable<ECP4> msmTask(final ECP4[] A,final short[][] d,final int c,final int lo,final int hi)
+	{
+		return new Callable<ECP4>() {
+			public ECP4 call()
+			{
+				return msmSum(A,d,c,lo,hi);
+			}
+		};
+	}
 }
@@ -40,6 +40,12 @@ public final class FP12 {
 		b.norm();
 		c.norm();
 	}
+
+/* largest excess of the components of this */
+	int xes()
+	{
+		return Math.max(a.xes(),Math.max(b.xes(),c.xes()));
+	}
 /* test x==0 ? */
 	public boolean iszilch() {
 		//reduce();
@@ -200,197 +206,183 @@ public final class FP12 {
 	}
 
 /* Chung-Hasan SQR2 method from http://cacr.uwaterloo.ca/techreports/2006/cacr2006-24.pdf */
+/* The FP4 products are left unreduced, and each coefficient is reduced once */
 	public void sqr()
 	{
-		FP4 A=new FP4(a);
-		FP4 B=new FP4(b);
-		FP4 C=new FP4(c);
-		FP4 D=new FP4(a);
+		FPScratch s=FPScratch.get();
+		DBIG[] z=FP2.nr(20);
+		int i;
 
-		A.sqr();
-		B.mul(c);
-		B.add(B);
-		B.norm();
-		C.sqr();
-		D.mul(b);
-		D.add(D);
+		if (FP2.lazyover(xes(),xes())) reduce();
 
-		c.add(a);
-		c.add(b);
-		c.norm();
-		c.sqr();
+		FP4 t=new FP4(a);
 
-		a.copy(A);
+		FP4.sqrnr(z,0,a,s);
+		FP4.mulnr(z,4,b,c,s);
+		FP4.sqrnr(z,8,c,s);
+		FP4.mulnr(z,12,a,b,s);
 
-		A.add(B);
-		A.norm();
-		A.add(C);
-		A.add(D);
-		A.norm();
+		t.add(b); t.add(c); t.norm();
+		FP4.sqrnr(z,16,t,s);
 
-		A.neg();
-		B.times_i();
-		C.times_i();
+		for (i=0;i<4;i++)
+		{
+			z[4+i].add(z[4+i]); z[4+i].norm();
+			z[12+i].add(z[12+i]); z[12+i].norm();
+			z[16+i].sub(z[i]); z[16+i].sub(z[8+i]); z[16+i].norm();
+			z[16+i].sub(z[4+i]); z[16+i].sub(z[12+i]); z[16+i].norm();
+		}
 
-		a.add(B);
+		FP4.times_inr(z,4,s);
+		FP4.times_inr(z,8,s);
 
-		b.copy(C); b.add(D);
-		c.add(A);
-		norm();
+		for (i=0;i<4;i++)
+		{
+			z[i].add(z[4+i]); z[i].norm();
+			z[12+i].add(z[8+i]); z[12+i].norm();
+		}
+
+		a.modnr(z,0,s);
+		b.modnr(z,12,s);
+		c.modnr(z,16,s);
 	}
 
 /* FP12 full multiplication this=this*y */
+/* Karatsuba over the FP4 coefficients, with the products left unreduced until the end */
 	public void mul(FP12 y)
 	{
-		FP4 z0=new FP4(a);
-		FP4 z1=new FP4(0);
-		FP4 z2=new FP4(b);
-		FP4 z3=new FP4(0);
+		FPScratch s=FPScratch.get();
+		DBIG[] z=FP2.nr(24);
+		int i;
+
+		if (FP2.lazyover(xes(),y.xes())) reduce();
+		if (FP2.lazyover(xes(),y.xes())) y.reduce();
+
 		FP4 t0=new FP4(a);
 		FP4 t1=new FP4(y.a);
 
-		z0.mul(y.a);
-		z2.mul(y.b);
+		FP4.mulnr(z,0,a,y.a,s);
+		FP4.mulnr(z,4,b,y.b,s);
+		FP4.mulnr(z,8,c,y.c,s);
 
-		t0.add(b);
-		t1.add(y.b);
+		t0.add(b); t0.norm();
+		t1.add(y.b); t1.norm();
+		FP4.mulnr(z,12,t0,t1,s);
+
+		t0.copy(b); t0.add(c); t0.norm();
+		t1.copy(y.b); t1.add(y.c); t1.norm();
+		FP4.mulnr(z,16,t0,t1,s);
+
+		t0.copy(a); t0.add(c); t0.norm();
+		t1.copy(y.a); t1.add(y.c); t1.norm();
+		FP4.mulnr(z,20,t0,t1,s);
+
+		for (i=0;i<4;i++)
+		{
+			z[12+i].sub(z[i]); z[12+i].sub(z[4+i]); z[12+i].norm();
+			z[16+i].sub(z[4+i]); z[16+i].sub(z[8+i]); z[16+i].norm();
+			z[20+i].sub(z[i]); z[20+i].sub(z[8+i]); z[20+i].add(z[4+i]); z[20+i].norm();
+		}
 
-		t0.norm();
-		t1.norm();
+		FP4.times_inr(z,16,s);
+		FP4.times_inr(z,8,s);
 
-		z1.copy(t0); z1.mul(t1);
-		t0.copy(b); t0.add(c);
+		for (i=0;i<4;i++)
+		{
+			z[i].add(z[16+i]); z[i].norm();
+			z[12+i].add(z[8+i]); z[12+i].norm();
+		}
 
-		t1.copy(y.b); t1.add(y.c);
+		a.modnr(z,0,s);
+		b.modnr(z,12,s);
+		c.modnr(z,20,s);
+	}
 
-		t0.norm();
-		t1.norm();
+/* Special case of multiplication arises from special form of ATE pairing line function */
+/* As mul, the FP4 products are left unreduced until the end */
+	public void smul(FP12 y,int type)
+	{
+		FPScratch s=FPScratch.get();
+		DBIG[] z=FP2.nr(24);
+		int i;
 
-		z3.copy(t0); z3.mul(t1);
+		if (FP2.lazyover(xes(),y.xes())) reduce();
+		if (FP2.lazyover(xes(),y.xes())) y.reduce();
 
-		t0.copy(z0); t0.neg();
-		t1.copy(z2); t1.neg();
+		FP4 t0=new FP4(a);
+		FP4 t1=new FP4(y.a);
 
-		z1.add(t0);
-		b.copy(z1); b.add(t1);
+		if (type==CONFIG_CURVE.D_TYPE)
+		{ // y=y.a+y.b.w, where y.b is real
+			FP4.mulnr(z,0,a,y.a,s);
+			FP4.pmulnr(z,4,b,y.b.real(),s);
 
-		z3.add(t1);
-		z2.add(t0);
+			t0.add(b); t0.norm();
+			t1.real().add(y.b.real()); t1.norm();
+			FP4.mulnr(z,8,t0,t1,s);
 
-		t0.copy(a); t0.add(c);
-		t1.copy(y.a); t1.add(y.c);
+			t0.copy(b); t0.add(c); t0.norm();
+			FP4.pmulnr(z,12,t0,y.b.real(),s);
 
-		t0.norm();
-		t1.norm();
-	
-		t0.mul(t1);
-		z2.add(t0);
+			t0.copy(a); t0.add(c); t0.norm();
+			FP4.mulnr(z,16,t0,y.a,s);
 
-		t0.copy(c); t0.mul(y.c);
-		t1.copy(t0); t1.neg();
+			for (i=0;i<4;i++)
+			{
+				z[8+i].sub(z[i]); z[8+i].sub(z[4+i]); z[8+i].norm();
+				z[16+i].sub(z[i]); z[16+i].add(z[4+i]); z[16+i].norm();
+				z[12+i].sub(z[4+i]); z[12+i].norm();
+			}
 
-		c.copy(z2); c.add(t1);
-		z3.add(t1);
-		t0.times_i();
-		b.add(t0);
-		z3.norm();
-		z3.times_i();
-		a.copy(z0); a.add(z3);
-		norm();
-	}
+			FP4.times_inr(z,12,s);
+			for (i=0;i<4;i++)
+			{
+				z[i].add(z[12+i]); z[i].norm();
+			}
 
-/* Special case of multiplication arises from special form of ATE pairing line function */
-	public void smul(FP12 y,int type)
-	{
-		if (type==CONFIG_CURVE.D_TYPE)
-		{
-			FP4 z0=new FP4(a);
-			FP4 z2=new FP4(b);
-			FP4 z3=new FP4(b);
-			FP4 t0=new FP4(0);
-			FP4 t1=new FP4(y.a);
-			z0.mul(y.a);
-			z2.pmul(y.b.real());
-			b.add(a);
-			t1.real().add(y.b.real());
-
-			t1.norm();
-			b.norm();
-			b.mul(t1);
-			z3.add(c);
-			z3.norm();
-			z3.pmul(y.b.real());
-
-			t0.copy(z0); t0.neg();
-			t1.copy(z2); t1.neg();
-
-			b.add(t0);
-
-			b.add(t1);
-			z3.add(t1);
-			z2.add(t0);
-
-			t0.copy(a); t0.add(c);
-			t0.norm();
-			z3.norm();
-			t0.mul(y.a);
-			c.copy(z2); c.add(t0);
-
-			z3.times_i();
-			a.copy(z0); a.add(z3);
+			a.modnr(z,0,s);
+			b.modnr(z,8,s);
+			c.modnr(z,16,s);
 		}
 		if (type==CONFIG_CURVE.M_TYPE)
-		{
-			FP4 z0=new FP4(a);
-			FP4 z1=new FP4(0);
-			FP4 z2=new FP4(0);
-			FP4 z3=new FP4(0);
-			FP4 t0=new FP4(a);
-			FP4 t1=new FP4(0);
-		
-			z0.mul(y.a);
-			t0.add(b);
-			t0.norm();
-
-			z1.copy(t0); z1.mul(y.a);
-			t0.copy(b); t0.add(c);
-			t0.norm();
-
-			z3.copy(t0); 
-			z3.pmul(y.c.getb());
-			z3.times_i();
-
-			t0.copy(z0); t0.neg();
-
-			z1.add(t0);
-			b.copy(z1); 
-			z2.copy(t0);
-
-			t0.copy(a); t0.add(c);
-			t1.copy(y.a); t1.add(y.c);
-
-			t0.norm();
-			t1.norm();
-	
-			t0.mul(t1);
-			z2.add(t0);
-
-			t0.copy(c); 
-			
-			t0.pmul(y.c.getb());
-			t0.times_i();
-
-			t1.copy(t0); t1.neg();
-
-			c.copy(z2); c.add(t1);
-			z3.add(t1);
-			t0.times_i();
-			b.add(t0);
-			z3.norm();
-			z3.times_i();
-			a.copy(z0); a.add(z3);
+		{ // y=y.a+y.c.w^2, where y.c is imaginary
+			FP4.mulnr(z,0,a,y.a,s);
+
+			t0.add(b); t0.norm();
+			FP4.mulnr(z,4,t0,y.a,s);
+
+			t0.copy(b); t0.add(c); t0.norm();
+			FP4.pmulnr(z,8,t0,y.c.getb(),s);
+
+			t0.copy(a); t0.add(c); t0.norm();
+			t1.add(y.c); t1.norm();
+			FP4.mulnr(z,12,t0,t1,s);
+
+			FP4.pmulnr(z,16,c,y.c.getb(),s);
+
+			for (i=0;i<4;i++)
+			{
+				z[4+i].sub(z[i]); z[4+i].norm();
+				z[8+i].sub(z[16+i]); z[8+i].norm();
+				z[12+i].sub(z[i]); z[12+i].norm();
+				z[20+i].copy(z[16+i]);
+			}
+
+			FP4.times_inr(z,20,s);
+			FP2.mul_ipnr(z,8,s); FP2.mul_ipnr(z,10,s);
+			FP2.mul_ipnr(z,16,s); FP2.mul_ipnr(z,18,s);
+
+			for (i=0;i<4;i++)
+			{
+				z[i].add(z[8+i]); z[i].norm();
+				z[4+i].add(z[16+i]); z[4+i].norm();
+				z[12+i].sub(z[20+i]); z[12+i].norm();
+			}
+
+			a.modnr(z,0,s);
+			b.modnr(z,4,s);
+			c.modnr(z,12,s);
 		}
-		norm();
 	}
 
 /* this=1/this */
@@ -552,6 +544,133 @@ public final class FP12 {
 		return ("["+a.toString()+","+b.toString()+","+c.toString()+"]");
 	}
 
+/* Karabina compressed squaring, for elements of the cyclotomic subgroup - https://eprint.iacr.org/2010/542 */
+/* With z^6=xi, this=g0+g2.z+g4.z^2+g1.z^3+g3.z^4+g5.z^5, so b=g2+g3.z^3 and c=g4+g5.z^3 are the */
+/* compressed coordinates. Only b and c are squared - a is left stale until decompress() */
+	private void csqr()
+	{
+		FP2 g2=b.geta();
+		FP2 g3=b.getb();
+		FP2 g4=c.geta();
+		FP2 g5=c.getb();
+
+		FP2 t0=new FP2(g4); t0.sqr();			// g4^2
+		FP2 t1=new FP2(g5); t1.sqr();			// g5^2
+		FP2 t2=new FP2(g2); t2.sqr();			// g2^2
+		FP2 t3=new FP2(g3); t3.sqr();			// g3^2
+
+		FP2 s45=new FP2(g4); s45.add(g5); s45.norm(); s45.sqr();
+		s45.sub(t0); s45.sub(t1); s45.norm();	// 2g4.g5
+		FP2 s23=new FP2(g2); s23.add(g3); s23.norm(); s23.sqr();
+		s23.sub(t2); s23.sub(t3); s23.norm();	// 2g2.g3
+		s45.mul_ip(); s45.norm();				// 2xi.g4.g5
+
+		t1.mul_ip(); t1.add(t0); t1.norm();		// g4^2+xi.g5^2
+		t3.mul_ip(); t3.add(t2); t3.norm();		// g2^2+xi.g3^2
+
+		g2.add(s45); g2.norm(); g2.add(g2); g2.add(s45);	// 2g2+3.(2xi.g4.g5)
+		g3.neg(); g3.add(t1); g3.norm(); g3.add(g3); g3.add(t1);	// 3(g4^2+xi.g5^2)-2g3
+		g4.neg(); g4.add(t3); g4.norm(); g4.add(g4); g4.add(t3);	// 3(g2^2+xi.g3^2)-2g4
+		g5.add(s23); g5.norm(); g5.add(g5); g5.add(s23);	// 2g5+3.(2g2.g3)
+
+		b.norm(); b.reduce();
+		c.norm(); c.reduce();
+	}
+
+/* Recover a=g0+g1.z^3 for each of the compressed C[0..n-1], sharing one inversion between them */
+/* g1=(xi.g5^2+3g4^2-2g3)/4g2, or 2g4.g5/g3 if g2=0, and g0=xi.(2g1^2+g2.g5-3g3.g4)+1 */
+/* returns false if some C[i] has g2=g3=0, but is not 1, and so can't be recovered */
+	private static boolean decompress(FP12[] C,int n)
+	{
+		FP2[] num=new FP2[n];
+		FP2[] den=new FP2[n];
+		FP2 g2,g3,g4,g5,t;
+		int i;
+
+		for (i=0;i<n;i++)
+		{
+			g2=C[i].b.geta(); g3=C[i].b.getb();
+			g4=C[i].c.geta(); g5=C[i].c.getb();
+			if (!g2.iszilch())
+			{
+				t=new FP2(g4); t.sqr();
+				num[i]=new FP2(t); num[i].sub(g3); num[i].norm(); num[i].add(num[i]); num[i].add(t); num[i].norm();
+				t.copy(g5); t.sqr(); t.mul_ip();
+				num[i].add(t); num[i].norm();
+				den[i]=new FP2(g2); den[i].add(den[i]); den[i].norm(); den[i].add(den[i]); den[i].norm();
+			}
+			else
+			{
+				if (g3.iszilch() && !C[i].c.iszilch()) return false;
+				num[i]=new FP2(g4); num[i].mul(g5); num[i].add(num[i]); num[i].norm();
+				den[i]=new FP2(g3);
+			}
+		}
+		FP2.batchInverseSafe(den,den);
+		for (i=0;i<n;i++)
+		{
+			g2=C[i].b.geta(); g3=C[i].b.getb();
+			g4=C[i].c.geta(); g5=C[i].c.getb();
+			FP2 g1=C[i].a.getb();
+			FP2 g0=C[i].a.geta();
+
+			g1.copy(num[i]); g1.mul(den[i]); g1.reduce();
+			t=new FP2(g3); t.mul(g4);		// g3.g4
+			g0.copy(g1); g0.sqr();
+			g0.sub(t); g0.norm(); g0.add(g0); g0.sub(t); g0.norm();	// 2g1^2-3g3.g4
+			t.copy(g2); t.mul(g5);
+			g0.add(t); g0.norm();
+			g0.mul_ip(); g0.add(new FP2(1)); g0.norm(); g0.reduce();
+		}
+		return true;
+	}
+
+/* this^e, for this in the cyclotomic subgroup. As pow(), but with the squarings done compressed, and */
+/* the powers that are needed decompressed together at the end. Suits a sparse e, such as the curve parameter */
+	public FP12 cycpow(BIG e)
+	{
+		FP12 sf=new FP12(this);
+		sf.norm();
+
+		BIG e1=new BIG(e);
+		e1.norm();
+		BIG e3=new BIG(e1);
+		e3.pmul(3);
+		e3.norm();
+
+		int i,bt,m=0,nb=e3.nbits();
+		FP12[] C=new FP12[nb];
+		int[] s=new int[nb];
+		FP12 w=new FP12(sf);
+		FP12 r=new FP12(1);
+
+		for (i=2;i<nb;i++)
+		{
+			w.csqr();
+			bt=e3.bit(i)-e1.bit(i);
+			if (bt!=0)
+			{
+				C[m]=new FP12(w);
+				s[m++]=bt;
+			}
+		}
+		if (!decompress(C,m)) return pow(e);
+
+		bt=e3.bit(1)-e1.bit(1);
+		if (bt!=0)
+		{
+			r.copy(sf);
+			if (bt<0) r.conj();
+		}
+		for (i=0;i<m;i++)
+		{
+			if (s[i]<0) C[i].conj();
+			r.mul(C[i]);
+		}
+		r.reduce();
+		return r;
+	}
+
 /* this=this^e */ 
 /* Note this is simple square and multiply, so not side-channel safe */
 	public FP12 pow(BIG e)
@@ -602,8 +721,8 @@ public final class FP12 {
 	{
 		FP12 g1=new FP12(0);
 		FP12 g2=new FP12(0);
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG q=new BIG(ROM.Modulus);
+		FP2 f=PFCONSTANTS.FROB;
+		BIG q=CONSTANTS.MODULUS;
 
 		BIG m=new BIG(q);
 		m.mod(r);
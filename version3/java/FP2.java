@@ -221,12 +221,11 @@ public final class FP2 {
 			if (b.XES>1) b.reduce();		
 		}
 
-		DBIG pR=new DBIG(0);
+		FPScratch s=FPScratch.get();
+		DBIG pR=PFCONSTANTS.MODULUS_R;
 		BIG C=new BIG(a.x);
 		BIG D=new BIG(y.a.x);
 
-		pR.ucopy(new BIG(ROM.Modulus));
-
 		DBIG A=BIG.mul(a.x,y.a.x);
 		DBIG B=BIG.mul(b.x,y.b.x);
 
@@ -240,8 +239,90 @@ public final class FP2 {
 		A.add(B); A.norm();
 		E.sub(F); E.norm();
 
-		a.x.copy(FP.mod(A)); a.XES=3;
-		b.x.copy(FP.mod(E)); b.XES=2;
+		FP.mod(a.x,A,s); a.XES=3;
+		FP.mod(b.x,E,s); b.XES=2;
+	}
+
+/* Lazy reduction. An unreduced FP2 is carried as a pair of signed, normalised DBIGs */
+/* r[k]+i.r[k+1], which are added and subtracted freely and reduced just once at the end. */
+/* The coefficients of the products of FP2, FP4 and FP12 elements are sums of products of */
+/* components whose multipliers add up to at most LAZY, so if LAZY.ex.ey<=FEXCESS, where */
+/* ex and ey are the largest excesses of the operands, they are less than Modulus.2^(NLEN.BASEBITS) */
+	static final int LAZY=30;
+
+/* true if lazy products of elements with excesses ex and ey might not reduce */
+	static boolean lazyover(int ex,int ey)
+	{
+		return ((long)ex*ey>CONFIG_FIELD.FEXCESS/LAZY);
+	}
+
+/* workspace for n unreduced components */
+	static DBIG[] nr(int n)
+	{
+		DBIG[] r=new DBIG[n];
+		for (int i=0;i<n;i++)
+			r[i]=new DBIG(0);
+		return r;
+	}
+
+/* largest excess of the components of this */
+	int xes()
+	{
+		return Math.max(a.XES,b.XES);
+	}
+
+/* r[k]+i.r[k+1]=x*y, unreduced */
+	static void mulnr(DBIG[] r,int k,FP2 x,FP2 y,FPScratch s)
+	{
+		BIG C=s.t;
+		BIG D=s.u;
+		DBIG A=r[k];
+		DBIG B=s.dd;
+		DBIG E=r[k+1];
+
+		BIG.mul(A,x.a.x,y.a.x);
+		BIG.mul(B,x.b.x,y.b.x);
+
+		C.copy(x.a.x); C.add(x.b.x); C.norm();
+		D.copy(y.a.x); D.add(y.b.x); D.norm();
+		BIG.mul(E,C,D);
+
+		E.sub(A); E.sub(B); E.norm();
+		A.sub(B); A.norm();
+	}
+
+/* r[k]+i.r[k+1]*=(1+sqrt(-1)), as mul_ip */
+	static void mul_ipnr(DBIG[] r,int k,FPScratch s)
+	{
+		DBIG t=s.dd;
+		t.copy(r[k]);
+		r[k].sub(r[k+1]); r[k].norm();
+		r[k+1].add(t); r[k+1].norm();
+	}
+
+/* this=r[k]+i.r[k+1] mod Modulus. r is destroyed */
+	void modnr(DBIG[] r,int k,FPScratch s)
+	{
+		r[k].add(PFCONSTANTS.MODULUS_R); r[k].norm();
+		FP.mod(a.x,r[k],s); a.XES=3;
+		r[k+1].add(PFCONSTANTS.MODULUS_R); r[k+1].norm();
+		FP.mod(b.x,r[k+1],s); b.XES=3;
+	}
+
+/* return 1 if this is a non-zero square, else 0, in constant time. a+ib is a square iff a^2+b^2 is a square in FP */
+	public int qr()
+	{
+		FP w1=new FP(a);
+		FP w2=new FP(b);
+		w1.sqr(); w2.sqr(); w1.add(w2);
+		return w1.qr();
+	}
+
+/* sign of this, as sgn0 of the hash to curve draft - the parity of a, or of b if a=0 */
+	int sgn0()
+	{
+		int ax=a.iszilch()?1:0;
+		return a.redc().parity()|(ax&b.redc().parity());
 	}
 
 /* sqrt(a+ib) = sqrt(a+sqrt(a*a-n*b*b)/2)+ib/(2*sqrt(a+sqrt(a*a-n*b*b)/2)) */
@@ -298,6 +379,47 @@ public final class FP2 {
 		b.mul(w1);
 	}
 
+/* out[i]=1/in[i]. The norms are inverted together with FP.batchInverse, so that there is just */
+/* one base field inversion, using Montgomery's trick */
+/* in and out may be the same array. Every in[i] must be non-zero */
+	public static void batchInverse(FP2[] in,FP2[] out)
+	{
+		batchInverse(in,out,false);
+	}
+
+/* as batchInverse, but zero elements are allowed, and left as zero */
+	public static void batchInverseSafe(FP2[] in,FP2[] out)
+	{
+		batchInverse(in,out,true);
+	}
+
+	private static void batchInverse(FP2[] in,FP2[] out,boolean safe)
+	{
+		int i,n=in.length;
+		FP[] w=new FP[n];	/* norms a^2+b^2 */
+		FP2 t;
+		FP u;
+
+		for (i=0;i<n;i++)
+		{
+			t=new FP2(in[i]); t.norm();
+			w[i]=new FP(t.a); w[i].sqr();
+			u=new FP(t.b); u.sqr();
+			w[i].add(u);
+		}
+		if (safe) FP.batchInverseSafe(w,w);
+		else FP.batchInverse(w,w);
+		for (i=0;i<n;i++)
+		{
+			t=new FP2(in[i]); t.norm();
+			t.a.mul(w[i]);
+			w[i].neg(); w[i].norm();
+			t.b.mul(w[i]);
+			if (out[i]==null) out[i]=t;
+			else out[i].copy(t);
+		}
+	}
+
 /* this/=2 */
 	public void div2()
 	{
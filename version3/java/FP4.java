@@ -214,40 +214,97 @@ public final class FP4 {
 		norm();
 	}
 /* this*=y */
+/* Uses Lazy reduction - the three FP2 products are combined before reduction */
 	public void mul(FP4 y)
 	{
-		FP2 t1=new FP2(a);
-		FP2 t2=new FP2(b);
-		FP2 t3=new FP2(0);
-		FP2 t4=new FP2(b);
+		FPScratch s=FPScratch.get();
+		DBIG[] r=FP2.nr(4);
 
-		t1.mul(y.a);
-		t2.mul(y.b);
-		t3.copy(y.b);
-		t3.add(y.a);
-		t4.add(a);
+		if (FP2.lazyover(xes(),y.xes())) reduce();
+		if (FP2.lazyover(xes(),y.xes())) y.reduce();
 
-		t3.norm();
-		t4.norm();
+		mulnr(r,0,this,y,s);
+		modnr(r,0,s);
+	}
 
-		t4.mul(t3);
+/* largest excess of the components of this */
+	int xes()
+	{
+		return Math.max(a.xes(),b.xes());
+	}
 
-		t3.copy(t1);
-		t3.neg();
-		t4.add(t3);
-		t4.norm();
+/* r[k..k+3]=x*y, unreduced - see FP2.mulnr */
+	static void mulnr(DBIG[] r,int k,FP4 x,FP4 y,FPScratch s)
+	{
+		DBIG[] t=FP2.nr(2);
+		FP2 u=new FP2(x.a);
+		FP2 v=new FP2(y.a);
 
-		t3.copy(t2);
-		t3.neg();
-		b.copy(t4);
-		b.add(t3);
+		FP2.mulnr(r,k,x.a,y.a,s);
+		FP2.mulnr(t,0,x.b,y.b,s);
 
-		t2.mul_ip();
-		a.copy(t2);
-		a.add(t1);
+		u.add(x.b); u.norm();
+		v.add(y.b); v.norm();
+		FP2.mulnr(r,k+2,u,v,s);
 
-		norm();
+		for (int i=0;i<2;i++)
+		{
+			r[k+2+i].sub(r[k+i]); r[k+2+i].sub(t[i]); r[k+2+i].norm();
+		}
+		FP2.mul_ipnr(t,0,s);
+		for (int i=0;i<2;i++)
+		{
+			r[k+i].add(t[i]); r[k+i].norm();
+		}
 	}
+
+/* r[k..k+3]=x^2, unreduced */
+	static void sqrnr(DBIG[] r,int k,FP4 x,FPScratch s)
+	{
+		DBIG[] t=FP2.nr(2);
+		FP2 u=new FP2(x.a);
+		FP2 v=new FP2(x.b);
+
+		FP2.mulnr(r,k+2,x.a,x.b,s);
+
+		u.add(x.b); u.norm();
+		v.mul_ip(); v.add(x.a); v.norm();
+		FP2.mulnr(r,k,u,v,s);
+
+		for (int i=0;i<2;i++)
+			t[i].copy(r[k+2+i]);
+		FP2.mul_ipnr(t,0,s);
+		for (int i=0;i<2;i++)
+		{
+			r[k+i].sub(r[k+2+i]); r[k+i].sub(t[i]); r[k+i].norm();
+			r[k+2+i].add(r[k+2+i]); r[k+2+i].norm();
+		}
+	}
+
+/* r[k..k+3]=x*f, where f is an FP2, unreduced */
+	static void pmulnr(DBIG[] r,int k,FP4 x,FP2 f,FPScratch s)
+	{
+		FP2.mulnr(r,k,x.a,f,s);
+		FP2.mulnr(r,k+2,x.b,f,s);
+	}
+
+/* r[k..k+3]*=i, as times_i */
+	static void times_inr(DBIG[] r,int k,FPScratch s)
+	{
+		DBIG t0=r[k];
+		DBIG t1=r[k+1];
+		r[k]=r[k+2]; r[k+1]=r[k+3];
+		r[k+2]=t0; r[k+3]=t1;
+		FP2.mul_ipnr(r,k,s);
+	}
+
+/* this=r[k..k+3] mod Modulus. r is destroyed */
+	void modnr(DBIG[] r,int k,FPScratch s)
+	{
+		a.modnr(r,k,s);
+		b.modnr(r,k+2,s);
+	}
+
 /* convert this to hex string */
 	public String toString() 
 	{
@@ -290,6 +347,47 @@ public final class FP4 {
 		norm();
 	}
 
+/* out[i]=1/in[i]. The norms are inverted together with FP2.batchInverse, so that there is just */
+/* one base field inversion, using Montgomery's trick */
+/* in and out may be the same array. Every in[i] must be non-zero */
+	public static void batchInverse(FP4[] in,FP4[] out)
+	{
+		batchInverse(in,out,false);
+	}
+
+/* as batchInverse, but zero elements are allowed, and left as zero */
+	public static void batchInverseSafe(FP4[] in,FP4[] out)
+	{
+		batchInverse(in,out,true);
+	}
+
+	private static void batchInverse(FP4[] in,FP4[] out,boolean safe)
+	{
+		int i,n=in.length;
+		FP2[] w=new FP2[n];	/* norms a^2-b^2.(1+sqrt(-1)) */
+		FP4 t;
+		FP2 u;
+
+		for (i=0;i<n;i++)
+		{
+			t=new FP4(in[i]); t.norm();
+			w[i]=new FP2(t.a); w[i].sqr();
+			u=new FP2(t.b); u.sqr(); u.mul_ip(); u.norm();
+			w[i].sub(u);
+		}
+		if (safe) FP2.batchInverseSafe(w,w);
+		else FP2.batchInverse(w,w);
+		for (i=0;i<n;i++)
+		{
+			t=new FP4(in[i]); t.norm();
+			t.a.mul(w[i]);
+			w[i].neg(); w[i].norm();
+			t.b.mul(w[i]);
+			if (out[i]==null) out[i]=t;
+			else out[i].copy(t);
+		}
+	}
+
 /* this=this^p using Frobenius */
 	public void frob(FP2 f)
 	{
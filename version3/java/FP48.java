@@ -782,6 +782,133 @@ public final class FP48 {
 		return ("["+a.toString()+","+b.toString()+","+c.toString()+"]");
 	}
 
+/* Karabina compressed squaring, for elements of the cyclotomic subgroup - https://eprint.iacr.org/2010/542 */
+/* With z^6=xi, this=g0+g2.z+g4.z^2+g1.z^3+g3.z^4+g5.z^5, so b=g2+g3.z^3 and c=g4+g5.z^3 are the */
+/* compressed coordinates. Only b and c are squared - a is left stale until decompress() */
+	private void csqr()
+	{
+		FP8 g2=b.geta();
+		FP8 g3=b.getb();
+		FP8 g4=c.geta();
+		FP8 g5=c.getb();
+
+		FP8 t0=new FP8(g4); t0.sqr();			// g4^2
+		FP8 t1=new FP8(g5); t1.sqr();			// g5^2
+		FP8 t2=new FP8(g2); t2.sqr();			// g2^2
+		FP8 t3=new FP8(g3); t3.sqr();			// g3^2
+
+		FP8 s45=new FP8(g4); s45.add(g5); s45.norm(); s45.sqr();
+		s45.sub(t0); s45.sub(t1); s45.norm();	// 2g4.g5
+		FP8 s23=new FP8(g2); s23.add(g3); s23.norm(); s23.sqr();
+		s23.sub(t2); s23.sub(t3); s23.norm();	// 2g2.g3
+		s45.times_i(); s45.norm();				// 2xi.g4.g5
+
+		t1.times_i(); t1.add(t0); t1.norm();		// g4^2+xi.g5^2
+		t3.times_i(); t3.add(t2); t3.norm();		// g2^2+xi.g3^2
+
+		g2.add(s45); g2.norm(); g2.add(g2); g2.add(s45);	// 2g2+3.(2xi.g4.g5)
+		g3.neg(); g3.add(t1); g3.norm(); g3.add(g3); g3.add(t1);	// 3(g4^2+xi.g5^2)-2g3
+		g4.neg(); g4.add(t3); g4.norm(); g4.add(g4); g4.add(t3);	// 3(g2^2+xi.g3^2)-2g4
+		g5.add(s23); g5.norm(); g5.add(g5); g5.add(s23);	// 2g5+3.(2g2.g3)
+
+		b.norm(); b.reduce();
+		c.norm(); c.reduce();
+	}
+
+/* Recover a=g0+g1.z^3 for each of the compressed C[0..n-1], sharing one inversion between them */
+/* g1=(xi.g5^2+3g4^2-2g3)/4g2, or 2g4.g5/g3 if g2=0, and g0=xi.(2g1^2+g2.g5-3g3.g4)+1 */
+/* returns false if some C[i] has g2=g3=0, but is not 1, and so can't be recovered */
+	private static boolean decompress(FP48[] C,int n)
+	{
+		FP8[] num=new FP8[n];
+		FP8[] den=new FP8[n];
+		FP8 g2,g3,g4,g5,t;
+		int i;
+
+		for (i=0;i<n;i++)
+		{
+			g2=C[i].b.geta(); g3=C[i].b.getb();
+			g4=C[i].c.geta(); g5=C[i].c.getb();
+			if (!g2.iszilch())
+			{
+				t=new FP8(g4); t.sqr();
+				num[i]=new FP8(t); num[i].sub(g3); num[i].norm(); num[i].add(num[i]); num[i].add(t); num[i].norm();
+				t.copy(g5); t.sqr(); t.times_i();
+				num[i].add(t); num[i].norm();
+				den[i]=new FP8(g2); den[i].add(den[i]); den[i].norm(); den[i].add(den[i]); den[i].norm();
+			}
+			else
+			{
+				if (g3.iszilch() && !C[i].c.iszilch()) return false;
+				num[i]=new FP8(g4); num[i].mul(g5); num[i].add(num[i]); num[i].norm();
+				den[i]=new FP8(g3);
+			}
+		}
+		FP8.batchInverseSafe(den,den);
+		for (i=0;i<n;i++)
+		{
+			g2=C[i].b.geta(); g3=C[i].b.getb();
+			g4=C[i].c.geta(); g5=C[i].c.getb();
+			FP8 g1=C[i].a.getb();
+			FP8 g0=C[i].a.geta();
+
+			g1.copy(num[i]); g1.mul(den[i]); g1.reduce();
+			t=new FP8(g3); t.mul(g4);		// g3.g4
+			g0.copy(g1); g0.sqr();
+			g0.sub(t); g0.norm(); g0.add(g0); g0.sub(t); g0.norm();	// 2g1^2-3g3.g4
+			t.copy(g2); t.mul(g5);
+			g0.add(t); g0.norm();
+			g0.times_i(); g0.add(new FP8(1)); g0.norm(); g0.reduce();
+		}
+		return true;
+	}
+
+/* this^e, for this in the cyclotomic subgroup. As pow(), but with the squarings done compressed, and */
+/* the powers that are needed decompressed together at the end. Suits a sparse e, such as the curve parameter */
+	public FP48 cycpow(BIG e)
+	{
+		FP48 sf=new FP48(this);
+		sf.norm();
+
+		BIG e1=new BIG(e);
+		e1.norm();
+		BIG e3=new BIG(e1);
+		e3.pmul(3);
+		e3.norm();
+
+		int i,bt,m=0,nb=e3.nbits();
+		FP48[] C=new FP48[nb];
+		int[] s=new int[nb];
+		FP48 w=new FP48(sf);
+		FP48 r=new FP48(1);
+
+		for (i=2;i<nb;i++)
+		{
+			w.csqr();
+			bt=e3.bit(i)-e1.bit(i);
+			if (bt!=0)
+			{
+				C[m]=new FP48(w);
+				s[m++]=bt;
+			}
+		}
+		if (!decompress(C,m)) return pow(e);
+
+		bt=e3.bit(1)-e1.bit(1);
+		if (bt!=0)
+		{
+			r.copy(sf);
+			if (bt<0) r.conj();
+		}
+		for (i=0;i<m;i++)
+		{
+			if (s[i]<0) C[i].conj();
+			r.mul(C[i]);
+		}
+		r.reduce();
+		return r;
+	}
+
 /* this=this^e */ 
 /* Note this is simple square and multiply, so not side-channel safe */
 	public FP48 pow(BIG e)
@@ -834,8 +961,8 @@ public final class FP48 {
 	{
 		FP48 g1=new FP48(0);
 		FP48 g2=new FP48(0);
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG q=new BIG(ROM.Modulus);
+		FP2 f=PFCONSTANTS.FROB;
+		BIG q=CONSTANTS.MODULUS;
 
 		BIG m=new BIG(q);
 		m.mod(r);
@@ -911,7 +1038,7 @@ public final class FP48 {
 		g1[7]=new FP48(g1[3]); g1[7].mul(q[3]); // q[0].q[1].q[2].q[3]
 
 // Use Frobenius
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
+		FP2 f=PFCONSTANTS.FROB;
 		for (i=0;i<8;i++)
 		{
 			g2[i]=new FP48(g1[i]);
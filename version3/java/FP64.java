@@ -33,76 +33,87 @@ public final class FP {
 
 /**************** 64-bit specific ************************/
 
-/* reduce a DBIG to a BIG using the appropriate form of the modulus */
-	public static BIG mod(DBIG d)
+/* r=d mod Modulus using the appropriate form of the modulus. d is destroyed. No allocation */
+	public static void mod(BIG r,DBIG d,FPScratch s)
 	{
+		s.mods++;
 		if (CONFIG_FIELD.MODTYPE==CONFIG_FIELD.PSEUDO_MERSENNE)
 		{
-			BIG b;		
 			long v,tw;
-			BIG t=d.split(CONFIG_FIELD.MODBITS);
-			b=new BIG(d);
+			BIG t=s.t;
+			d.split(t,CONFIG_FIELD.MODBITS);
+			r.copy(d);
 
 			v=t.pmul((int)ROM.MConst);
 
-			t.add(b);
-			t.norm();
+			r.add(t);
+			r.norm();
 
-			tw=t.w[BIG.NLEN-1];
-			t.w[BIG.NLEN-1]&=FP.TMASK;
-			t.w[0]+=(ROM.MConst*((tw>>TBITS)+(v<<(CONFIG_BIG.BASEBITS-TBITS))));
+			tw=r.w[BIG.NLEN-1];
+			r.w[BIG.NLEN-1]&=TMASK;
+			r.w[0]+=(ROM.MConst*((tw>>TBITS)+(v<<(CONFIG_BIG.BASEBITS-TBITS))));
 
-			t.norm();
-			return t;			
+			r.norm();
+			return;
 		}
 		if (CONFIG_FIELD.MODTYPE==CONFIG_FIELD.MONTGOMERY_FRIENDLY)
 		{
-			BIG b;		
-			long[] cr=new long[2];
 			for (int i=0;i<BIG.NLEN;i++)
-			{
-				cr=BIG.muladd(d.w[i],ROM.MConst-1,d.w[i],d.w[BIG.NLEN+i-1]);
-				d.w[BIG.NLEN+i]+=cr[0];
-				d.w[BIG.NLEN+i-1]=cr[1];
-			}
-			
-			b=new BIG(0);
+				d.w[BIG.NLEN+i]+=BIG.muladd(d.w[i],ROM.MConst-1,d.w[i],d.w,BIG.NLEN+i-1);
+
 			for (int i=0;i<BIG.NLEN;i++ )
-				b.w[i]=d.w[BIG.NLEN+i];
-			b.norm();
-			return b;		
+				r.w[i]=d.w[BIG.NLEN+i];
+			r.norm();
+			return;
 		}
 		if (CONFIG_FIELD.MODTYPE==CONFIG_FIELD.GENERALISED_MERSENNE)
 		{ // GoldiLocks Only
-			BIG b;		
-			BIG t=d.split(CONFIG_FIELD.MODBITS);
-			b=new BIG(d);
-			b.add(t);
-			DBIG dd=new DBIG(t);
+			BIG t=s.t;
+			BIG tt=s.u;
+			BIG lo=s.m;
+			DBIG dd=s.dd;
+			d.split(t,CONFIG_FIELD.MODBITS);
+			r.copy(d);
+			r.add(t);
+			dd.copy(t);
 			dd.shl(CONFIG_FIELD.MODBITS/2);
 
-			BIG tt=dd.split(CONFIG_FIELD.MODBITS);
-			BIG lo=new BIG(dd);
-			b.add(tt);
-			b.add(lo);
-			b.norm();
+			dd.split(tt,CONFIG_FIELD.MODBITS);
+			lo.copy(dd);
+			r.add(tt);
+			r.add(lo);
+			r.norm();
 			tt.shl(CONFIG_FIELD.MODBITS/2);
-			b.add(tt);
+			r.add(tt);
 
-			long carry=b.w[BIG.NLEN-1]>>TBITS;
-			b.w[BIG.NLEN-1]&=FP.TMASK;
-			b.w[0]+=carry;
+			long carry=r.w[BIG.NLEN-1]>>TBITS;
+			r.w[BIG.NLEN-1]&=TMASK;
+			r.w[0]+=carry;
 			
-			b.w[224/CONFIG_BIG.BASEBITS]+=carry<<(224%CONFIG_BIG.BASEBITS);
-			b.norm();
-			return b;		
+			r.w[224/CONFIG_BIG.BASEBITS]+=carry<<(224%CONFIG_BIG.BASEBITS);
+			r.norm();
+			return;
 		}
 		if (CONFIG_FIELD.MODTYPE==CONFIG_FIELD.NOT_SPECIAL)
 		{
-			return BIG.monty(new BIG(ROM.Modulus),ROM.MConst,d);
+			BIG.monty(r,CONSTANTS.MODULUS,ROM.MConst,d);
+			return;
 		}
+		r.zero();
+	}
 
-		return new BIG(0);
+/* reduce a DBIG to a BIG using the appropriate form of the modulus */
+	public static BIG mod(DBIG d)
+	{
+		BIG r=new BIG(0);
+		mod(r,d,FPScratch.get());
+		return r;
+	}
+
+/* number of modular reductions made so far by the calling thread */
+	public static long modcount()
+	{
+		return FPScratch.get().mods;
 	}
 
 	private static int quo(BIG n,BIG m)
@@ -124,13 +135,15 @@ public final class FP {
 		return (int)(num/(den+1));
 	}
 
-/* reduce this mod Modulus */
-	public void reduce()
+/* reduce this mod Modulus, using workspace s */
+	public void reduce(FPScratch s)
 	{
-		BIG m=new BIG(ROM.Modulus);
-		BIG r=new BIG(ROM.Modulus);
+		BIG m=s.m;
+		BIG r=s.r;
 		int sr,sb,q;
 		long carry;
+		m.copy(CONSTANTS.MODULUS);
+		r.copy(CONSTANTS.MODULUS);
 		x.norm();
 
 		if (XES>16)
@@ -156,6 +169,12 @@ public final class FP {
 		XES=1;
 	}
 
+/* reduce this mod Modulus */
+	public void reduce()
+	{
+		reduce(FPScratch.get());
+	}
+
 /*********************************************************/
 
 
@@ -202,8 +221,9 @@ public final class FP {
 	{
 		if (CONFIG_FIELD.MODTYPE!=CONFIG_FIELD.PSEUDO_MERSENNE && CONFIG_FIELD.MODTYPE!=CONFIG_FIELD.GENERALISED_MERSENNE)
 		{
-			DBIG d=BIG.mul(x,new BIG(ROM.R2modp));  /*** Change ***/
-			x.copy(mod(d));
+			FPScratch s=FPScratch.get();
+			BIG.mul(s.d,x,CONSTANTS.R2MODP);
+			mod(x,s.d,s);
 			XES=2;
 		}
 		else XES=1;
@@ -226,8 +246,10 @@ public final class FP {
 
 /* test this=0? */
 	public boolean iszilch() {
-		FP z=new FP(this);
-		z.reduce();
+		FPScratch s=FPScratch.get();
+		FP z=s.f;
+		z.copy(this);
+		z.reduce(s);
 		return z.x.iszilch();
 
 	}
@@ -277,16 +299,38 @@ public final class FP {
 
 	}
 
-/* this*=b mod Modulus */
-	public void mul(FP b)
+/* a reduced - in place if a is this, as it is about to be overwritten, else as a copy held in s */
+	private FP reduced(FP a,FPScratch s)
 	{
-		if ((long)XES*b.XES>(long)CONFIG_FIELD.FEXCESS) reduce();
+		if (a!=this)
+		{
+			s.e.copy(a);
+			a=s.e;
+		}
+		a.reduce(s);
+		return a;
+	}
+
+/* this=a*b mod Modulus, using workspace s. a and b are left as they are, unless one is this */
+	public void mul(FP a,FP b,FPScratch s)
+	{
+		if ((long)a.XES*b.XES>(long)CONFIG_FIELD.FEXCESS)
+		{
+			if (b==a) b=a=reduced(a,s);
+			else a=reduced(a,s);
+		}
 
-		DBIG d=BIG.mul(x,b.x);
-		x.copy(mod(d));
+		BIG.mul(s.d,a.x,b.x);
+		mod(x,s.d,s);
 		XES=2;
 	}
 
+/* this*=b mod Modulus */
+	public void mul(FP b)
+	{
+		mul(this,b,FPScratch.get());
+	}
+
 /* this*=c mod Modulus, where c is a small int */
 	public void imul(int c)
 	{
@@ -321,17 +365,22 @@ public final class FP {
 		if (s) {neg(); norm();}
 	}
 
-/* this*=this mod Modulus */
-	public void sqr()
+/* this=a^2 mod Modulus, using workspace s. a is left as it is, unless it is this */
+	public void sqr(FP a,FPScratch s)
 	{
-		DBIG d;
-		if ((long)XES*XES>(long)CONFIG_FIELD.FEXCESS) reduce();
+		if ((long)a.XES*a.XES>(long)CONFIG_FIELD.FEXCESS) a=reduced(a,s);
 
-		d=BIG.sqr(x);	
-		x.copy(mod(d));
+		BIG.sqr(s.d,a.x);
+		mod(x,s.d,s);
 		XES=2;
 	}
 
+/* this*=this mod Modulus */
+	public void sqr()
+	{
+		sqr(this,FPScratch.get());
+	}
+
 /* this+=b */
 	public void add(FP b) {
 		x.add(b.x);
@@ -361,7 +410,8 @@ public final class FP {
 	public void neg()
 	{
 		int sb;
-		BIG m=new BIG(ROM.Modulus);
+		BIG m=FPScratch.get().q;
+		m.copy(CONSTANTS.MODULUS);
 
 		sb=logb2(XES-1);
 		m.fshl(sb);
@@ -394,7 +444,7 @@ public final class FP {
 			x.fshr(1);
 		else
 		{
-			x.add(new BIG(ROM.Modulus));
+			x.add(CONSTANTS.MODULUS);
 			x.norm();
 			x.fshr(1);
 		}
@@ -509,7 +559,14 @@ public final class FP {
 /* this=1/this mod Modulus */
 	public void inverse()
 	{
-
+		if (CONFIG_BIG.SAFEGCD)
+		{ // x=a.R is inverted as an integer, and the result 1/(a.R) taken to 1/a.R by two conversions
+			reduce();
+			CONSTANTS.MODINV.inverse(x);
+			nres();
+			nres();
+			return;
+		}
 		if (CONFIG_FIELD.MODTYPE==CONFIG_FIELD.PSEUDO_MERSENNE  || CONFIG_FIELD.MODTYPE==CONFIG_FIELD.GENERALISED_MERSENNE)
 		{
 			FP y=fpow();
@@ -525,20 +582,75 @@ public final class FP {
 			y.sqr();
 			mul(y);
 		} else {
-			BIG m2=new BIG(ROM.Modulus);
+			BIG m2=new BIG(CONSTANTS.MODULUS);
 			m2.dec(2); m2.norm();
 			copy(pow(m2));
 		}
 	}
 
+/* out[i]=1/in[i], using Montgomery's trick - one inversion and 3(n-1) multiplications */
+/* in and out may be the same array. Every in[i] must be non-zero */
+	public static void batchInverse(FP[] in,FP[] out)
+	{
+		batchInverse(in,out,false);
+	}
+
+/* as batchInverse, but zero elements are allowed, and left as zero */
+	public static void batchInverseSafe(FP[] in,FP[] out)
+	{
+		batchInverse(in,out,true);
+	}
+
+	private static void batchInverse(FP[] in,FP[] out,boolean safe)
+	{
+		int i,n=in.length;
+		FP[] e=new FP[n];	/* the elements, with any zeros replaced by one */
+		FP[] p=new FP[n];	/* running products */
+		int[] z=new int[n];
+		FP one=new FP(1);
+		FP inv,t;
+
+		if (n==0) return;
+		for (i=0;i<n;i++)
+		{
+			e[i]=new FP(in[i]);
+			if (safe)
+			{
+				z[i]=e[i].iszilch()?1:0;
+				e[i].cmove(one,z[i]);
+			}
+			p[i]=new FP(e[i]);
+			if (i>0) p[i].mul(p[i-1]);
+		}
+
+		inv=new FP(p[n-1]);
+		inv.inverse();
+		for (i=n-1;i>=0;i--)
+		{
+			if (i>0)
+			{
+				t=new FP(p[i-1]);
+				t.mul(inv);
+				inv.mul(e[i]);
+			}
+			else t=inv;
+			if (safe) t.cmove(new FP(0),z[i]);
+			if (out[i]==null) out[i]=new FP(t);
+			else out[i].copy(t);
+		}
+	}
+
 /* return TRUE if this==a */
 	public boolean equals(FP a)
 	{
-		FP f=new FP(this);
-		FP s=new FP(a);
-		f.reduce();
-		s.reduce();
-		if (BIG.comp(f.x,s.x)==0) return true;
+		FPScratch s=FPScratch.get();
+		FP f=s.f;
+		FP g=s.g;
+		f.copy(this);
+		g.copy(a);
+		f.reduce(s);
+		g.reduce(s);
+		if (BIG.comp(f.x,g.x)==0) return true;
 		return false;
 	}
 
@@ -590,7 +702,7 @@ public final class FP {
 			{
 				v=i.fpow();
 			} else {
-				BIG b=new BIG(ROM.Modulus);
+				BIG b=new BIG(CONSTANTS.MODULUS);
 				b.dec(5); b.norm(); b.shr(3);
 				v=i.pow(b);
 			}
@@ -609,18 +721,28 @@ public final class FP {
 				r.mul(this);
 				return r;
 			} else {
-				BIG b=new BIG(ROM.Modulus);
+				BIG b=new BIG(CONSTANTS.MODULUS);
 				b.inc(1); b.norm(); b.shr(2);
 				return pow(b);
 			}
 		}
 	}
 
+/* return 1 if this is a non-zero square mod Modulus, else 0. By exponentiation, so unlike jacobi() the time does not depend on this */
+	public int qr()
+	{
+		BIG b=new BIG(CONSTANTS.MODULUS);
+		b.dec(1); b.norm(); b.shr(1);
+		FP r=pow(b);
+		if (r.equals(new FP(1))) return 1;
+		return 0;
+	}
+
 /* return jacobi symbol (this/Modulus) */
 	public int jacobi()
 	{
 		BIG w=redc();
-		return w.jacobi(new BIG(ROM.Modulus));
+		return w.jacobi(CONSTANTS.MODULUS);
 	}
 
 }
@@ -288,6 +288,47 @@ public final class FP8 {
 		b.mul(t1);
 	}
 
+/* out[i]=1/in[i]. The norms are inverted together with FP4.batchInverse, so that there is just */
+/* one base field inversion, using Montgomery's trick */
+/* in and out may be the same array. Every in[i] must be non-zero */
+	public static void batchInverse(FP8[] in,FP8[] out)
+	{
+		batchInverse(in,out,false);
+	}
+
+/* as batchInverse, but zero elements are allowed, and left as zero */
+	public static void batchInverseSafe(FP8[] in,FP8[] out)
+	{
+		batchInverse(in,out,true);
+	}
+
+	private static void batchInverse(FP8[] in,FP8[] out,boolean safe)
+	{
+		int i,n=in.length;
+		FP4[] w=new FP4[n];	/* norms a^2-b^2.i */
+		FP8 t;
+		FP4 u;
+
+		for (i=0;i<n;i++)
+		{
+			t=new FP8(in[i]); t.norm();
+			w[i]=new FP4(t.a); w[i].sqr();
+			u=new FP4(t.b); u.sqr(); u.times_i(); u.norm();
+			w[i].sub(u); w[i].norm();
+		}
+		if (safe) FP4.batchInverseSafe(w,w);
+		else FP4.batchInverse(w,w);
+		for (i=0;i<n;i++)
+		{
+			t=new FP8(in[i]); t.norm();
+			t.a.mul(w[i]);
+			w[i].neg(); w[i].norm();
+			t.b.mul(w[i]);
+			if (out[i]==null) out[i]=t;
+			else out[i].copy(t);
+		}
+	}
+
 /* this*=i where i = sqrt(-1+sqrt(-1)) */
 	public void times_i()
 	{
@@ -0,0 +1,50 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Reusable workspace for the in-place FP API */
+
+package org.apache.milagro.amcl.XXX;
+
+public final class FPScratch {
+
+	final DBIG d=new DBIG(0);	/* double length product */
+	final DBIG dd=new DBIG(0);
+	final BIG t=new BIG(0);		/* reduction temporaries */
+	final BIG u=new BIG(0);
+	final BIG m=new BIG(0);
+	final BIG r=new BIG(0);
+	final BIG q=new BIG(0);
+	final FP f=new FP();
+	final FP g=new FP();
+	final FP e=new FP();		/* reduced copy of an operand of FP.mul and FP.sqr */
+	long mods;			/* FP.mod calls made by this thread */
+
+	private static final ThreadLocal<FPScratch> local=new ThreadLocal<FPScratch>() {
+		protected FPScratch initialValue()
+		{
+			return new FPScratch();
+		}
+	};
+
+/* return the workspace belonging to the calling thread */
+	public static FPScratch get()
+	{
+		return local.get();
+	}
+}
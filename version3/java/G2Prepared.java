@@ -0,0 +1,122 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Miller loop line coefficients for a fixed G2 argument of the pairing, and a bounded cache of them */
+
+package org.apache.milagro.amcl.XXX;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class G2Prepared {
+	public static final int CACHE_SIZE=64;	/* prepared points held by get(), least recently used dropped first */
+
+	private static final byte UNCHECKED=0,CHECKED=1;	/* cache key tags */
+
+	final FP2[][] L;	/* line coefficients, in the order the Miller loop uses them. null for O */
+
+	private static final Map<ByteBuffer,G2Prepared> cache=new LinkedHashMap<ByteBuffer,G2Prepared>(16,0.75f,true) {
+		private static final long serialVersionUID=1L;
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer,G2Prepared> e)
+		{
+			return size()>CACHE_SIZE;
+		}
+	};
+
+	private static final class Generator {
+		static final G2Prepared G=new G2Prepared(ECP2.generator());
+	}
+
+/* Constructor - prepare P */
+	public G2Prepared(ECP2 P)
+	{
+		if (P.is_infinity()) L=null;
+		else L=PAIR.prepare(P);
+	}
+
+	public boolean is_infinity()
+	{
+		return L==null;
+	}
+
+/* return P prepared, from the cache if possible. P is not checked to be in G2, so it is */
+/* cached apart from the points of fromBytes(), which are */
+	public static G2Prepared get(ECP2 P)
+	{
+		if (P.is_infinity()) return new G2Prepared(P);
+		byte[] b=new byte[4*CONFIG_BIG.MODBYTES+1];
+		byte[] t=new byte[4*CONFIG_BIG.MODBYTES];
+		P.toBytes(t);
+		b[0]=UNCHECKED;
+		for (int i=0;i<t.length;i++) b[i+1]=t[i];
+		return get(ByteBuffer.wrap(b),P);
+	}
+
+/* return the fixed generator of G2 prepared, built on first use */
+	public static G2Prepared generator()
+	{
+		return Generator.G;
+	}
+
+/* return the point encoded in W prepared, from the cache if possible, as if by ECP2.fromBytes(W). A point */
+/* that is not in G2 is prepared as O, so the membership test is paid once per cached key */
+	public static G2Prepared fromBytes(byte[] W)
+	{
+		byte[] b=new byte[W.length+1];
+		b[0]=CHECKED;
+		for (int i=0;i<W.length;i++) b[i+1]=W[i];
+		return get(ByteBuffer.wrap(b),null);
+	}
+
+/* keys are tagged by their first byte, so that a point from get() is never taken as checked */
+	private static G2Prepared get(ByteBuffer key,ECP2 P)
+	{
+		G2Prepared G;
+		synchronized (cache)
+		{
+			G=cache.get(key);
+		}
+		if (G!=null) return G;
+		if (P==null)
+		{
+			byte[] W=new byte[key.capacity()-1];
+			key.position(1);
+			key.get(W);
+			key.rewind();
+			P=ECP2.fromBytes(W);
+			if (!PAIR.G2member(P)) P.inf();
+		}
+		G=new G2Prepared(P);
+		synchronized (cache)
+		{
+			cache.put(key,G);
+		}
+		return G;
+	}
+
+/* empty the cache */
+	public static void clear()
+	{
+		synchronized (cache)
+		{
+			cache.clear();
+		}
+	}
+}
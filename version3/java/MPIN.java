@@ -185,7 +185,7 @@ public class MPIN
 	{
 		ECP P;
 		BIG x=new BIG(u);
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 		x.mod(p);
 		while (true)
 		{
@@ -232,7 +232,7 @@ public class MPIN
 		ECP P=new ECP(u,v);
 		if (P.is_infinity()) return INVALID_POINT;
 
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 		u=BIG.randomnum(p,rng);
 
 		su=rng.getByte();  su%=2;
@@ -286,7 +286,7 @@ public class MPIN
 		ECP P=ECP.fromBytes(R1);
 		ECP Q=ECP.fromBytes(R2);
 
-		if (P.is_infinity() || Q.is_infinity()) return INVALID_POINT;
+		if (!PAIR.G1member(P) || !PAIR.G1member(Q)) return INVALID_POINT;
 
 		P.add(Q); 
 
@@ -300,7 +300,7 @@ public class MPIN
 		ECP2 P=ECP2.fromBytes(W1);
 		ECP2 Q=ECP2.fromBytes(W2);
 
-		if (P.is_infinity() || Q.is_infinity()) return INVALID_POINT;
+		if (!PAIR.G2member(P) || !PAIR.G2member(Q)) return INVALID_POINT;
 
 		P.add(Q); 
 	
@@ -312,7 +312,7 @@ public class MPIN
 	public static int RANDOM_GENERATE(RAND rng,byte[] S)
 	{
 		BIG s;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		s=BIG.randomnum(r,rng);
 		s.toBytes(S);
 		return 0;
@@ -340,7 +340,7 @@ public class MPIN
 /* Implement step 2 on client side of MPin protocol */
 	public static int CLIENT_2(byte[] X,byte[] Y,byte[] SEC)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		ECP P=ECP.fromBytes(SEC);
 		if (P.is_infinity()) return INVALID_POINT;
 
@@ -358,7 +358,7 @@ public class MPIN
 /* Implement step 1 on client side of MPin protocol */
 	public static int CLIENT_1(int sha,int date,byte[] CLIENT_ID,RAND rng,byte[] X,int pin,byte[] TOKEN,byte[] SEC,byte[] xID,byte[] xCID,byte[] PERMIT)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		BIG x;
 		if (rng!=null)
 		{
@@ -434,7 +434,7 @@ public class MPIN
 	public static int GET_G1_MULTIPLE(RAND rng, int type,byte[] X,byte[] G,byte[] W)
 	{
 		BIG x;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		if (rng!=null)
 		{
 			x=BIG.randomnum(r,rng);
@@ -496,10 +496,10 @@ public class MPIN
 /* Implement step 2 of MPin protocol on server side */
 	public static int SERVER_2(int date,byte[] HID,byte[] HTID,byte[] Y,byte[] SST,byte[] xID,byte[] xCID,byte[] mSEC,byte[] E,byte[] F)
 	{
-		BIG q=new BIG(ROM.Modulus);
-		ECP2 Q=ECP2.generator();
+		BIG q=CONSTANTS.MODULUS;
+		G2Prepared Q=G2Prepared.generator();
 
-		ECP2 sQ=ECP2.fromBytes(SST);
+		G2Prepared sQ=G2Prepared.fromBytes(SST);
 		if (sQ.is_infinity()) return INVALID_POINT;	
 
 		ECP R;
@@ -654,7 +654,7 @@ public class MPIN
 
 		W=PAIR.G1mul(W,x);
 
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 
 		z.add(h);	//new
 		z.mod(r);
@@ -715,7 +715,7 @@ public class MPIN
 	{
 		byte[] h = hashit(sha,TimeValue,xCID,EFS);
 		BIG y = BIG.fromBytes(h);
-		BIG q=new BIG(ROM.CURVE_Order);
+		BIG q=CONSTANTS.CURVE_ORDER;
 		y.mod(q);
 		y.toBytes(Y);
 	}
@@ -191,7 +191,7 @@ public class MPIN192
 	{
 		ECP P;
 		BIG x=new BIG(u);
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 		x.mod(p);
 		while (true)
 		{
@@ -238,7 +238,7 @@ public class MPIN192
 		ECP P=new ECP(u,v);
 		if (P.is_infinity()) return INVALID_POINT;
 
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 		u=BIG.randomnum(p,rng);
 
 		su=rng.getByte();  su%=2;
@@ -292,7 +292,7 @@ public class MPIN192
 		ECP P=ECP.fromBytes(R1);
 		ECP Q=ECP.fromBytes(R2);
 
-		if (P.is_infinity() || Q.is_infinity()) return INVALID_POINT;
+		if (!PAIR192.G1member(P) || !PAIR192.G1member(Q)) return INVALID_POINT;
 
 		P.add(Q); 
 
@@ -306,7 +306,7 @@ public class MPIN192
 		ECP4 P=ECP4.fromBytes(W1);
 		ECP4 Q=ECP4.fromBytes(W2);
 
-		if (P.is_infinity() || Q.is_infinity()) return INVALID_POINT;
+		if (!PAIR192.G2member(P) || !PAIR192.G2member(Q)) return INVALID_POINT;
 
 		P.add(Q); 
 	
@@ -318,7 +318,7 @@ public class MPIN192
 	public static int RANDOM_GENERATE(RAND rng,byte[] S)
 	{
 		BIG s;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		s=BIG.randomnum(r,rng);
 		s.toBytes(S);
 		return 0;
@@ -346,7 +346,7 @@ public class MPIN192
 /* Implement step 2 on client side of MPin protocol */
 	public static int CLIENT_2(byte[] X,byte[] Y,byte[] SEC)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		ECP P=ECP.fromBytes(SEC);
 		if (P.is_infinity()) return INVALID_POINT;
 
@@ -364,7 +364,7 @@ public class MPIN192
 /* Implement step 1 on client side of MPin protocol */
 	public static int CLIENT_1(int sha,int date,byte[] CLIENT_ID,RAND rng,byte[] X,int pin,byte[] TOKEN,byte[] SEC,byte[] xID,byte[] xCID,byte[] PERMIT)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		BIG x;
 		if (rng!=null)
 		{
@@ -441,7 +441,7 @@ public class MPIN192
 	public static int GET_G1_MULTIPLE(RAND rng, int type,byte[] X,byte[] G,byte[] W)
 	{
 		BIG x;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		if (rng!=null)
 		{
 			x=BIG.randomnum(r,rng);
@@ -503,7 +503,7 @@ public class MPIN192
 /* Implement step 2 of MPin protocol on server side */
 	public static int SERVER_2(int date,byte[] HID,byte[] HTID,byte[] Y,byte[] SST,byte[] xID,byte[] xCID,byte[] mSEC,byte[] E,byte[] F)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=CONSTANTS.MODULUS;
 		ECP4 Q=ECP4.generator();
 
 		ECP4 sQ=ECP4.fromBytes(SST);
@@ -661,7 +661,7 @@ public class MPIN192
 
 		W=PAIR192.G1mul(W,x);
 
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 
 		z.add(h);	//new
 		z.mod(r);
@@ -722,7 +722,7 @@ public class MPIN192
 	{
 		byte[] h = hashit(sha,TimeValue,xCID,EFS);
 		BIG y = BIG.fromBytes(h);
-		BIG q=new BIG(ROM.CURVE_Order);
+		BIG q=CONSTANTS.CURVE_ORDER;
 		y.mod(q);
 		y.toBytes(Y);
 	}
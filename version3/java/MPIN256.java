@@ -197,7 +197,7 @@ public class MPIN256
 	{
 		ECP P;
 		BIG x=new BIG(u);
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 		x.mod(p);
 		while (true)
 		{
@@ -244,7 +244,7 @@ public class MPIN256
 		ECP P=new ECP(u,v);
 		if (P.is_infinity()) return INVALID_POINT;
 
-		BIG p=new BIG(ROM.Modulus);
+		BIG p=CONSTANTS.MODULUS;
 		u=BIG.randomnum(p,rng);
 
 		su=rng.getByte();  su%=2;
@@ -298,7 +298,7 @@ public class MPIN256
 		ECP P=ECP.fromBytes(R1);
 		ECP Q=ECP.fromBytes(R2);
 
-		if (P.is_infinity() || Q.is_infinity()) return INVALID_POINT;
+		if (!PAIR256.G1member(P) || !PAIR256.G1member(Q)) return INVALID_POINT;
 
 		P.add(Q); 
 
@@ -312,7 +312,7 @@ public class MPIN256
 		ECP8 P=ECP8.fromBytes(W1);
 		ECP8 Q=ECP8.fromBytes(W2);
 
-		if (P.is_infinity() || Q.is_infinity()) return INVALID_POINT;
+		if (!PAIR256.G2member(P) || !PAIR256.G2member(Q)) return INVALID_POINT;
 
 		P.add(Q); 
 	
@@ -324,7 +324,7 @@ public class MPIN256
 	public static int RANDOM_GENERATE(RAND rng,byte[] S)
 	{
 		BIG s;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		s=BIG.randomnum(r,rng);
 		s.toBytes(S);
 		return 0;
@@ -352,7 +352,7 @@ public class MPIN256
 /* Implement step 2 on client side of MPin protocol */
 	public static int CLIENT_2(byte[] X,byte[] Y,byte[] SEC)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		ECP P=ECP.fromBytes(SEC);
 		if (P.is_infinity()) return INVALID_POINT;
 
@@ -370,7 +370,7 @@ public class MPIN256
 /* Implement step 1 on client side of MPin protocol */
 	public static int CLIENT_1(int sha,int date,byte[] CLIENT_ID,RAND rng,byte[] X,int pin,byte[] TOKEN,byte[] SEC,byte[] xID,byte[] xCID,byte[] PERMIT)
 	{
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		BIG x;
 		if (rng!=null)
 		{
@@ -447,7 +447,7 @@ public class MPIN256
 	public static int GET_G1_MULTIPLE(RAND rng, int type,byte[] X,byte[] G,byte[] W)
 	{
 		BIG x;
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 		if (rng!=null)
 		{
 			x=BIG.randomnum(r,rng);
@@ -509,7 +509,7 @@ public class MPIN256
 /* Implement step 2 of MPin protocol on server side */
 	public static int SERVER_2(int date,byte[] HID,byte[] HTID,byte[] Y,byte[] SST,byte[] xID,byte[] xCID,byte[] mSEC,byte[] E,byte[] F)
 	{
-		BIG q=new BIG(ROM.Modulus);
+		BIG q=CONSTANTS.MODULUS;
 		ECP8 Q=ECP8.generator();
 
 		ECP8 sQ=ECP8.fromBytes(SST);
@@ -667,7 +667,7 @@ public class MPIN256
 
 		W=PAIR256.G1mul(W,x);
 
-		BIG r=new BIG(ROM.CURVE_Order);
+		BIG r=CONSTANTS.CURVE_ORDER;
 
 		z.add(h);	//new
 		z.mod(r);
@@ -728,7 +728,7 @@ public class MPIN256
 	{
 		byte[] h = hashit(sha,TimeValue,xCID,EFS);
 		BIG y = BIG.fromBytes(h);
-		BIG q=new BIG(ROM.CURVE_Order);
+		BIG q=CONSTANTS.CURVE_ORDER;
 		y.mod(q);
 		y.toBytes(Y);
 	}
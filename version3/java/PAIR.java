@@ -21,6 +21,12 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public final class PAIR {
 
 //	public static final boolean GT_STRONG=false;
@@ -28,7 +34,14 @@ public final class PAIR {
 /* Line function */
 	public static FP12 line(ECP2 A,ECP2 B,FP Qx,FP Qy)
 	{
-		FP4 a,b,c;                            // Edits here
+		return lineval(lineco(A,B),Qx,Qy);
+	}
+
+/* Line function coefficients {l0,l1,l2}, which depend only on A and B. The line at Q is l0.Qy | l1 | l2.Qx */
+/* A is advanced to A+B, or 2A if A==B */
+	static FP2[] lineco(ECP2 A,ECP2 B)
+	{
+		FP2[] l=new FP2[3];
 		if (A==B)
 		{ // Doubling
 			FP2 XX=new FP2(A.getx());  //X
@@ -42,10 +55,8 @@ public final class PAIR {
 			
 			YZ.imul(4);
 			YZ.neg(); YZ.norm();       //-2YZ
-			YZ.pmul(Qy);               //-2YZ.Ys
 
 			XX.imul(6);                //3X^2
-			XX.pmul(Qx);               //3X^2.Xs
 
 			int sb=3*ROM.CURVE_B_I;
 			ZZ.imul(sb); 	
@@ -67,17 +78,7 @@ public final class PAIR {
 			YY.add(YY);
 			ZZ.sub(YY); ZZ.norm();     // 3b.Z^2-Y^2
 
-			a=new FP4(YZ,ZZ);          // -2YZ.Ys | 3b.Z^2-Y^2 | 3X^2.Xs 
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
-			{			
-				b=new FP4(XX);             // L(0,1) | L(0,0) | L(1,0)
-				c=new FP4(0);
-			}
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
-			{
-				b=new FP4(0);
-				c=new FP4(XX); c.times_i();
-			}
+			l[0]=YZ; l[1]=ZZ; l[2]=XX;	// -2YZ | 3b.Z^2-Y^2 | 3X^2
 			A.dbl();
 		}
 		else
@@ -95,7 +96,6 @@ public final class PAIR {
 			Y1.sub(T1); Y1.norm();  // Y1=Y1-Z1.Y2
 
 			T1.copy(X1);            // T1=X1-Z1.X2
-			X1.pmul(Qy);            // X1=(X1-Z1.X2).Ys
 
 			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
 			{
@@ -108,22 +108,34 @@ public final class PAIR {
 			T2.copy(Y1);            // T2=Y1-Z1.Y2
 			T2.mul(B.getx());       // T2=(Y1-Z1.Y2).X2
 			T2.sub(T1); T2.norm();          // T2=(Y1-Z1.Y2).X2 - (X1-Z1.X2).Y2
-			Y1.pmul(Qx);  Y1.neg(); Y1.norm(); // Y1=-(Y1-Z1.Y2).Xs
+			Y1.neg(); Y1.norm();    // Y1=-(Y1-Z1.Y2)
 
-			a=new FP4(X1,T2);       // (X1-Z1.X2).Ys  |  (Y1-Z1.Y2).X2 - (X1-Z1.X2).Y2  | - (Y1-Z1.Y2).Xs
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
-			{
-				b=new FP4(Y1);
-				c=new FP4(0);
-			}
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
-			{
-				b=new FP4(0);
-				c=new FP4(Y1); c.times_i();
-			}
+			l[0]=X1; l[1]=T2; l[2]=Y1;	// (X1-Z1.X2)  |  (Y1-Z1.Y2).X2 - (X1-Z1.X2).Y2  | - (Y1-Z1.Y2)
 			A.add(B);
 		}
+		return l;
+	}
 
+/* Evaluate the line with coefficients l at Q=(Qx,Qy) */
+	static FP12 lineval(FP2[] l,FP Qx,FP Qy)
+	{
+		FP4 a,b,c;
+		FP2 y=new FP2(l[0]);
+		FP2 x=new FP2(l[2]);
+		y.pmul(Qy);
+		x.pmul(Qx);
+
+		a=new FP4(y,l[1]);          // L(0,1) | L(0,0) | L(1,0)
+		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.D_TYPE)
+		{
+			b=new FP4(x);
+			c=new FP4(0);
+		}
+		else
+		{
+			b=new FP4(0);
+			c=new FP4(x); c.times_i();
+		}
 		return new FP12(a,b,c);
 	}
 
@@ -131,7 +143,7 @@ public final class PAIR {
 	public static FP12 ate(ECP2 P1,ECP Q1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG n=new BIG(x);
 		ECP2 K=new ECP2();
 		FP12 lv;
@@ -146,12 +158,7 @@ public final class PAIR {
 
 		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
 		{
-			f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
-			{
-				f.inverse();
-				f.norm();
-			}
+			f=PFCONSTANTS.FROB_TWIST;
 			n.pmul(6);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
 			{
@@ -227,7 +234,7 @@ public final class PAIR {
 	public static FP12 ate2(ECP2 P1,ECP Q1,ECP2 R1,ECP S1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG n=new BIG(x);
 		ECP2 K=new ECP2();
 		FP12 lv;
@@ -247,12 +254,7 @@ public final class PAIR {
 
 		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
 		{
-			f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
-			{
-				f.inverse();
-				f.norm();
-			}
+			f=PFCONSTANTS.FROB_TWIST;
 			n.pmul(6); 
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
 			{
@@ -351,11 +353,327 @@ public final class PAIR {
 		return r;
 	}
 
+/* Optimal R-ate multi-pairing e(P[0],Q[0]).e(P[1],Q[1])...e(P[n-1],Q[n-1]), without the final exponentiation. */
+/* All the pairs share one Miller loop, so there is just one squaring of the accumulator per bit, */
+/* and the cost grows with the number of line functions. Pairs with a point at infinity are skipped. */
+	public static FP12 multiAte(ECP2[] P1,ECP[] Q1)
+	{
+		FP2 f;
+		BIG x=PFCONSTANTS.CURVE_BNX;
+		BIG n=new BIG(x);
+		ECP2 K=new ECP2();
+		FP12 lv;
+		int i,j,m,bt;
+
+		for (m=j=0;j<P1.length;j++)
+			if (!P1[j].is_infinity() && !Q1[j].is_infinity()) m++;
+
+// P[] is needed in affine form for line function, Q[] for (Qx,Qy) extraction
+		ECP2[] P=new ECP2[m];
+		ECP[] Q=new ECP[m];
+		for (m=j=0;j<P1.length;j++)
+		{
+			if (P1[j].is_infinity() || Q1[j].is_infinity()) continue;
+			P[m]=new ECP2(P1[j]);
+			Q[m]=new ECP(Q1[j]);
+			m++;
+		}
+		ECP2.affineBatch(P);
+		ECP.affineBatch(Q);
+
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
+		{
+			f=PFCONSTANTS.FROB_TWIST;
+			n.pmul(6);
+			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
+			{
+				n.inc(2);
+			} else {
+				n.dec(2);
+			}
+		}
+		else
+			n.copy(x);
+		n.norm();
+		BIG n3=new BIG(n);
+		n3.pmul(3);
+		n3.norm();
+
+		FP[] Qx=new FP[m];
+		FP[] Qy=new FP[m];
+		ECP2[] A=new ECP2[m];
+		ECP2[] MP=new ECP2[m];
+		FP12 r=new FP12(1);
+
+		for (j=0;j<m;j++)
+		{
+			Qx[j]=new FP(Q[j].getx());
+			Qy[j]=new FP(Q[j].gety());
+			A[j]=new ECP2(); A[j].copy(P[j]);
+			MP[j]=new ECP2(); MP[j].copy(P[j]); MP[j].neg();
+		}
+
+		int nb=n3.nbits();
+
+		for (i=nb-2;i>=1;i--)
+		{
+			r.sqr();
+			for (j=0;j<m;j++)
+			{
+				lv=line(A[j],A[j],Qx[j],Qy[j]);
+				r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+			}
+
+			bt=n3.bit(i)-n.bit(i); 
+			if (bt==1)
+			{
+				for (j=0;j<m;j++)
+				{
+					lv=line(A[j],P[j],Qx[j],Qy[j]);
+					r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				}
+			}
+			if (bt==-1)
+			{
+				for (j=0;j<m;j++)
+				{
+					lv=line(A[j],MP[j],Qx[j],Qy[j]);
+					r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				}
+			}
+		}
+
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
+		{
+			r.conj();
+		}
+
+/* R-ate fixup required for BN curves */
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
+		{
+			for (j=0;j<m;j++)
+			{
+				if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
+				{
+					A[j].neg();
+				}
+				K.copy(P[j]);
+				K.frob(f);
+				lv=line(A[j],K,Qx[j],Qy[j]);
+				r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				K.frob(f);
+				K.neg();
+				lv=line(A[j],K,Qx[j],Qy[j]);
+				r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+			}
+		}
+		return r;
+	}
+
+/* As multiAte(), but with the pairs split into chunks, whose Miller loops run as separate tasks on ex. */
+/* The partial products are multiplied together, so follow with one fexp(). chunks sets the parallelism, */
+/* and the last chunk runs on the calling thread. If anything fails, the tasks still running are cancelled */
+	public static FP12 multiAte(ECP2[] P,ECP[] Q,Executor ex,int chunks)
+	{
+		int i,n=P.length;
+		if (chunks>n) chunks=n;
+		if (chunks<=1) return multiAte(P,Q);
+
+		ArrayList<FutureTask<FP12>> tasks=new ArrayList<FutureTask<FP12>>();
+		for (i=0;i<chunks-1;i++)
+		{
+			FutureTask<FP12> t=new FutureTask<FP12>(chunk(P,Q,(int)((long)n*i/chunks),(int)((long)n*(i+1)/chunks)));
+			ex.execute(t);
+			tasks.add(t);
+		}
+		FP12 r;
+		try {
+			r=partial(P,Q,(int)((long)n*(chunks-1)/chunks),n);
+			for (i=0;i<chunks-1;i++)
+				r.mul(tasks.get(i).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable c=e.getCause();
+			if (c instanceof RuntimeException) throw (RuntimeException)c;
+			if (c instanceof Error) throw (Error)c;
+			throw new IllegalStateException(c);
+		} finally {
+			for (FutureTask<FP12> t : tasks) t.cancel(true);	/* no-op for those done - stops the rest if this failed */
+		}
+		return r;
+	}
+
+/* the Miller loop of the pairs lo..hi-1 */
+	private static FP12 partial(ECP2[] P,ECP[] Q,int lo,int hi)
+	{
+		ECP2[] PC=new ECP2[hi-lo];
+		ECP[] QC=new ECP[hi-lo];
+		System.arraycopy(P,lo,PC,0,hi-lo);
+		System.arraycopy(Q,lo,QC,0,hi-lo);
+		return multiAte(PC,QC);
+	}
+
+/* partial() as a task */
+	private static Callable<FP12> chunk(final ECP2[] P,final ECP[] Q,final int lo,final int hi)
+	{
+		return new Callable<FP12>() {
+			public FP12 call()
+			{
+				return partial(P,Q,lo,hi);
+			}
+		};
+	}
+
+/* ate parameter n, and n3=3n */
+	private static BIG[] aten()
+	{
+		BIG x=PFCONSTANTS.CURVE_BNX;
+		BIG n=new BIG(x);
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
+		{
+			n.pmul(6);
+			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
+			{
+				n.inc(2);
+			} else {
+				n.dec(2);
+			}
+		}
+		n.norm();
+		BIG n3=new BIG(n);
+		n3.pmul(3);
+		n3.norm();
+		return new BIG[] {n,n3};
+	}
+
+/* Line coefficients of the ate Miller loop for P, in the order they are used. See G2Prepared */
+	static FP2[][] prepare(ECP2 P1)
+	{
+		FP2 f=PFCONSTANTS.FROB_TWIST;
+		BIG[] nn=aten();
+		BIG n=nn[0],n3=nn[1];
+		ECP2 K=new ECP2();
+		int i,k,bt,nb=n3.nbits();
+
+		ECP2 P=new ECP2(P1);
+		P.affine();
+
+		ECP2 A=new ECP2();
+		A.copy(P);
+		ECP2 MP=new ECP2();
+		MP.copy(P); MP.neg();
+
+		FP2[][] L=new FP2[2*nb+2][];
+		k=0;
+		for (i=nb-2;i>=1;i--)
+		{
+			L[k++]=lineco(A,A);
+			bt=n3.bit(i)-n.bit(i); 
+			if (bt==1) L[k++]=lineco(A,P);
+			if (bt==-1) L[k++]=lineco(A,MP);
+		}
+
+/* R-ate fixup required for BN curves */
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
+		{
+			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
+			{
+				A.neg();
+			}
+			K.copy(P);
+			K.frob(f);
+			L[k++]=lineco(A,K);
+			K.frob(f);
+			K.neg();
+			L[k++]=lineco(A,K);
+		}
+		return L;
+	}
+
+/* Optimal R-ate pairing, with P prepared */
+	public static FP12 ate(G2Prepared P,ECP Q)
+	{
+		return multiAte(new G2Prepared[] {P},new ECP[] {Q});
+	}
+
+/* Optimal R-ate double pairing e(P,Q).e(R,S), with P and R prepared */
+	public static FP12 ate2(G2Prepared P,ECP Q,G2Prepared R,ECP S)
+	{
+		return multiAte(new G2Prepared[] {P,R},new ECP[] {Q,S});
+	}
+
+/* As multiAte(), but with the line functions taken from the prepared P[], so that no G2 arithmetic is done */
+	public static FP12 multiAte(G2Prepared[] P1,ECP[] Q1)
+	{
+		BIG[] nn=aten();
+		BIG n=nn[0],n3=nn[1];
+		int i,j,k,m,bt,nb=n3.nbits();
+
+		for (m=j=0;j<P1.length;j++)
+			if (!P1[j].is_infinity() && !Q1[j].is_infinity()) m++;
+
+		FP2[][][] L=new FP2[m][][];
+		ECP[] Q=new ECP[m];
+		for (m=j=0;j<P1.length;j++)
+		{
+			if (P1[j].is_infinity() || Q1[j].is_infinity()) continue;
+			L[m]=P1[j].L;
+			Q[m]=new ECP(Q1[j]);
+			m++;
+		}
+		ECP.affineBatch(Q);
+
+		FP[] Qx=new FP[m];
+		FP[] Qy=new FP[m];
+		FP12 r=new FP12(1);
+
+		for (j=0;j<m;j++)
+		{
+			Qx[j]=new FP(Q[j].getx());
+			Qy[j]=new FP(Q[j].gety());
+		}
+
+		k=0;
+		for (i=nb-2;i>=1;i--)
+		{
+			r.sqr();
+			for (j=0;j<m;j++)
+				r.smul(lineval(L[j][k],Qx[j],Qy[j]),CONFIG_CURVE.SEXTIC_TWIST);
+			k++;
+
+			bt=n3.bit(i)-n.bit(i); 
+			if (bt!=0)
+			{
+				for (j=0;j<m;j++)
+					r.smul(lineval(L[j][k],Qx[j],Qy[j]),CONFIG_CURVE.SEXTIC_TWIST);
+				k++;
+			}
+		}
+
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
+		{
+			r.conj();
+		}
+
+/* R-ate fixup required for BN curves */
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
+		{
+			for (j=0;j<m;j++)
+			{
+				r.smul(lineval(L[j][k],Qx[j],Qy[j]),CONFIG_CURVE.SEXTIC_TWIST);
+				r.smul(lineval(L[j][k+1],Qx[j],Qy[j]),CONFIG_CURVE.SEXTIC_TWIST);
+			}
+		}
+		return r;
+	}
+
 /* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
 	public static FP12 fexp(FP12 m)
 	{
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		FP2 f=PFCONSTANTS.FROB;
+		BIG x=new BIG(PFCONSTANTS.CURVE_BNX);
 		FP12 r=new FP12(m);
 
 /* Easy part of final exp */
@@ -381,7 +699,7 @@ public final class PAIR {
 			x0.frob(f);
 			x1=new FP12(r);
 			x1.conj();
-			x4=r.pow(x);
+			x4=r.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
 			{
 				x4.conj();
@@ -390,13 +708,13 @@ public final class PAIR {
 			x3=new FP12(x4);
 			x3.frob(f);
 
-			x2=x4.pow(x);
+			x2=x4.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
 			{
 				x2.conj();
 			}
 			x5=new FP12(x2); x5.conj();
-			lv=x2.pow(x);
+			lv=x2.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.POSITIVEX)
 			{
 				lv.conj();
@@ -434,12 +752,12 @@ public final class PAIR {
 			FP12 y0,y1,y2,y3;
 // Ghamman & Fouotsa Method
 			y0=new FP12(r); y0.usqr();
-			y1=y0.pow(x);
+			y1=y0.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
 				y1.conj();
 			}
-			x.fshr(1); y2=y1.pow(x); 
+			x.fshr(1); y2=y1.cycpow(x); 
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
 				y2.conj();
@@ -452,12 +770,12 @@ public final class PAIR {
 			y1.conj();
 			y1.mul(y2);
 
-			y2=y1.pow(x);
+			y2=y1.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
 				y2.conj();
 			}
-			y3=y2.pow(x);
+			y3=y2.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
 				y3.conj();
@@ -470,7 +788,7 @@ public final class PAIR {
 			y2.frob(f); y2.frob(f);
 			y1.mul(y2);
 
-			y2=y3.pow(x);
+			y2=y3.cycpow(x);
 			if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
 			{
 				y2.conj();
@@ -496,7 +814,7 @@ public final class PAIR {
 		{
 			int i,j;
 			BIG t=new BIG(0);
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=CONSTANTS.CURVE_ORDER;
 
 			BIG[] v=new BIG[2];
 			for (i=0;i<2;i++)
@@ -519,8 +837,8 @@ public final class PAIR {
 		}
 		else
 		{ // -(x^2).P = (Beta.x,y)
-			BIG q=new BIG(ROM.CURVE_Order);
-			BIG x=new BIG(ROM.CURVE_Bnx);
+			BIG q=CONSTANTS.CURVE_ORDER;
+			BIG x=PFCONSTANTS.CURVE_BNX;
 			BIG x2=BIG.smul(x,x);
 			u[0]=new BIG(e);
 			u[0].mod(x2);
@@ -539,7 +857,7 @@ public final class PAIR {
 		{
 			int i,j;
 			BIG t=new BIG(0);
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG[] v=new BIG[4];
 			for (i=0;i<4;i++)
 			{
@@ -561,8 +879,8 @@ public final class PAIR {
 		}
 		else
 		{
-			BIG q=new BIG(ROM.CURVE_Order);
-			BIG x=new BIG(ROM.CURVE_Bnx);
+			BIG q=CONSTANTS.CURVE_ORDER;
+			BIG x=PFCONSTANTS.CURVE_BNX;
 			BIG w=new BIG(e);
 			for (int i=0;i<3;i++)
 			{
@@ -592,8 +910,8 @@ public final class PAIR {
 			int i,np,nn;
 			ECP Q=new ECP();
 			Q.copy(P); Q.affine();
-			BIG q=new BIG(ROM.CURVE_Order);
-			FP cru=new FP(new BIG(ROM.CURVE_Cru));
+			BIG q=CONSTANTS.CURVE_ORDER;
+			FP cru=PFCONSTANTS.CURVE_CRU;
 			BIG t=new BIG(0);
 			BIG[] u=glv(e);
 			Q.getx().mul(cru);
@@ -634,15 +952,9 @@ public final class PAIR {
 		if (CONFIG_CURVE.USE_GS_G2)
 		{
 			ECP2[] Q=new ECP2[4];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
+			FP2 f=PFCONSTANTS.FROB_TWIST;
 
-			if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
-			{
-				f.inverse();
-				f.norm();
-			}
-
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG[] u=gs(e);
 
 			BIG t=new BIG(0);
@@ -684,8 +996,8 @@ public final class PAIR {
 		if (CONFIG_CURVE.USE_GS_GT)
 		{
 			FP12[] g=new FP12[4];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			BIG q=new BIG(ROM.CURVE_Order);
+			FP2 f=PFCONSTANTS.FROB;
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG t=new BIG(0);
 			int i,np,nn;
 			BIG[] u=gs(e);
@@ -717,5 +1029,42 @@ public final class PAIR {
 		return r;
 	}
 
+/* true if P is in G1. Scott's test with the endomorphism (x,y)->(cru.x,y), which acts on G1 as -x^2 on BLS */
+/* curves, and nowhere else - so it costs two multiplications by x rather than one by the group order. */
+/* BN curves have cofactor 1, so every point on the curve is in G1 */
+	public static boolean G1member(ECP P)
+	{
+		if (P.is_infinity()) return false;
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN) return true;
+		byte[] d=PFCONSTANTS.CURVE_BNX_NAF;
+		ECP T=P.mulnaf(d).mulnaf(d);
+		T.neg();
+		ECP W=new ECP(P);
+		W.getx().mul(PFCONSTANTS.CURVE_CRU);
+		return W.equals(T);
+	}
+
+/* true if P is in G2. On BLS curves psi(P)=x.P, on BN curves psi^3(2x.P)=(x+1).P+psi(x.P)+psi^2(x.P), */
+/* where psi is the untwist-Frobenius-twist endomorphism - Scott, and Dai, Lin, Zhao and Zhou. Each costs */
+/* about one multiplication by x */
+	public static boolean G2member(ECP2 P)
+	{
+		if (P.is_infinity()) return false;
+		FP2 f=PFCONSTANTS.FROB_TWIST;
+		ECP2 T=P.mulByX();
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) T.neg();
+		ECP2 W=new ECP2(P);
+		if (CONFIG_CURVE.CURVE_PAIRING_TYPE==CONFIG_CURVE.BN)
+		{
+			ECP2 R=new ECP2(T);
+			W.copy(T); W.dbl(); W.frob(f); W.frob(f); W.frob(f);
+			T.add(P);
+			R.frob(f); T.add(R);
+			R.frob(f); T.add(R);
+		}
+		else W.frob(f);
+		return W.equals(T);
+	}
+
 }
 
@@ -21,6 +21,12 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public final class PAIR192 {
 
 //	public static final boolean GT_STRONG=false;
@@ -131,7 +137,7 @@ public final class PAIR192 {
 	public static FP24 ate(ECP4 P1,ECP Q1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG n=new BIG(x);
 		FP24 lv;
 		int bt;
@@ -189,7 +195,7 @@ public final class PAIR192 {
 	public static FP24 ate2(ECP4 P1,ECP Q1,ECP4 R1,ECP S1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG n=new BIG(x);
 		FP24 lv;
 		int bt;
@@ -265,11 +271,148 @@ public final class PAIR192 {
 		return r;
 	}
 
+/* Optimal R-ate multi-pairing e(P[0],Q[0]).e(P[1],Q[1])...e(P[n-1],Q[n-1]), without the final exponentiation. */
+/* All the pairs share one Miller loop, so there is just one squaring of the accumulator per bit, */
+/* and the cost grows with the number of line functions. Pairs with a point at infinity are skipped. */
+	public static FP24 multiAte(ECP4[] P1,ECP[] Q1)
+	{
+		FP2 f;
+		BIG x=PFCONSTANTS.CURVE_BNX;
+		BIG n=new BIG(x);
+		FP24 lv;
+		int i,j,m,bt;
+
+		for (m=j=0;j<P1.length;j++)
+			if (!P1[j].is_infinity() && !Q1[j].is_infinity()) m++;
+
+// P[] is needed in affine form for line function, Q[] for (Qx,Qy) extraction
+		ECP4[] P=new ECP4[m];
+		ECP[] Q=new ECP[m];
+		for (m=j=0;j<P1.length;j++)
+		{
+			if (P1[j].is_infinity() || Q1[j].is_infinity()) continue;
+			P[m]=new ECP4(P1[j]);
+			Q[m]=new ECP(Q1[j]);
+			m++;
+		}
+		ECP4.affineBatch(P);
+		ECP.affineBatch(Q);
+		BIG n3=new BIG(n);
+		n3.pmul(3);
+		n3.norm();
+
+		FP[] Qx=new FP[m];
+		FP[] Qy=new FP[m];
+		ECP4[] A=new ECP4[m];
+		ECP4[] MP=new ECP4[m];
+		FP24 r=new FP24(1);
+
+		for (j=0;j<m;j++)
+		{
+			Qx[j]=new FP(Q[j].getx());
+			Qy[j]=new FP(Q[j].gety());
+			A[j]=new ECP4(); A[j].copy(P[j]);
+			MP[j]=new ECP4(); MP[j].copy(P[j]); MP[j].neg();
+		}
+
+		int nb=n3.nbits();
+
+		for (i=nb-2;i>=1;i--)
+		{
+			r.sqr();
+			for (j=0;j<m;j++)
+			{
+				lv=line(A[j],A[j],Qx[j],Qy[j]);
+				r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+			}
+
+			bt=n3.bit(i)-n.bit(i); 
+			if (bt==1)
+			{
+				for (j=0;j<m;j++)
+				{
+					lv=line(A[j],P[j],Qx[j],Qy[j]);
+					r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				}
+			}
+			if (bt==-1)
+			{
+				for (j=0;j<m;j++)
+				{
+					lv=line(A[j],MP[j],Qx[j],Qy[j]);
+					r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				}
+			}
+		}
+
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
+		{
+			r.conj();
+		}
+		return r;
+	}
+
+/* As multiAte(), but with the pairs split into chunks, whose Miller loops run as separate tasks on ex. */
+/* The partial products are multiplied together, so follow with one fexp(). chunks sets the parallelism, */
+/* and the last chunk runs on the calling thread. If anything fails, the tasks still running are cancelled */
+	public static FP24 multiAte(ECP4[] P,ECP[] Q,Executor ex,int chunks)
+	{
+		int i,n=P.length;
+		if (chunks>n) chunks=n;
+		if (chunks<=1) return multiAte(P,Q);
+
+		ArrayList<FutureTask<FP24>> tasks=new ArrayList<FutureTask<FP24>>();
+		for (i=0;i<chunks-1;i++)
+		{
+			FutureTask<FP24> t=new FutureTask<FP24>(chunk(P,Q,(int)((long)n*i/chunks),(int)((long)n*(i+1)/chunks)));
+			ex.execute(t);
+			tasks.add(t);
+		}
+		FP24 r;
+		try {
+			r=partial(P,Q,(int)((long)n*(chunks-1)/chunks),n);
+			for (i=0;i<chunks-1;i++)
+				r.mul(tasks.get(i).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable c=e.getCause();
+			if (c instanceof RuntimeException) throw (RuntimeException)c;
+			if (c instanceof Error) throw (Error)c;
+			throw new IllegalStateException(c);
+		} finally {
+			for (FutureTask<FP24> t : tasks) t.cancel(true);	/* no-op for those done - stops the rest if this failed */
+		}
+		return r;
+	}
+
+/* the Miller loop of the pairs lo..hi-1 */
+	private static FP24 partial(ECP4[] P,ECP[] Q,int lo,int hi)
+	{
+		ECP4[] PC=new ECP4[hi-lo];
+		ECP[] QC=new ECP[hi-lo];
+		System.arraycopy(P,lo,PC,0,hi-lo);
+		System.arraycopy(Q,lo,QC,0,hi-lo);
+		return multiAte(PC,QC);
+	}
+
+/* partial() as a task */
+	private static Callable<FP24> chunk(final ECP4[] P,final ECP[] Q,final int lo,final int hi)
+	{
+		return new Callable<FP24>() {
+			public FP24 call()
+			{
+				return partial(P,Q,lo,hi);
+			}
+		};
+	}
+
 /* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
 	public static FP24 fexp(FP24 m)
 	{
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		FP2 f=PFCONSTANTS.FROB;
+		BIG x=new BIG(PFCONSTANTS.CURVE_BNX);
 		FP24 r=new FP24(m);
 
 /* Easy part of final exp */
@@ -287,10 +430,10 @@ public final class PAIR192 {
 // Ghamman & Fouotsa Method
 
 		t7=new FP24(r); t7.usqr();
-		t1=t7.pow(x);
+		t1=t7.cycpow(x);
 
 		x.fshr(1);
-		t2=t1.pow(x);
+		t2=t1.cycpow(x);
 		x.fshl(1);
 
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
@@ -300,9 +443,9 @@ public final class PAIR192 {
 		t2.mul(t3);
 		t2.mul(r);
 
-		t3=t2.pow(x);
-		t4=t3.pow(x);
-		t5=t4.pow(x);
+		t3=t2.cycpow(x);
+		t4=t3.cycpow(x);
+		t5=t4.cycpow(x);
 
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t3.conj(); t5.conj();
@@ -311,7 +454,7 @@ public final class PAIR192 {
 		t3.frob(f,6); t4.frob(f,5);
 		t3.mul(t4);
 
-		t6=t5.pow(x);
+		t6=t5.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t6.conj();
 		}
@@ -326,8 +469,8 @@ public final class PAIR192 {
 		t5.frob(f,3);
 
 		t3.mul(t5);
-		t5=t6.pow(x);
-		t6=t5.pow(x);
+		t5=t6.cycpow(x);
+		t6=t5.cycpow(x);
 
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t5.conj();
@@ -340,7 +483,7 @@ public final class PAIR192 {
 		t0.frob(f,1);
 
 		t3.mul(t0);
-		t5=t6.pow(x);
+		t5=t6.cycpow(x);
 
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t5.conj();
@@ -362,8 +505,8 @@ public final class PAIR192 {
 	{
 		BIG[] u=new BIG[2];
 // -(x^4).P = (Beta.x,y)
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=CONSTANTS.CURVE_ORDER;
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG x2=BIG.smul(x,x);
 		x=BIG.smul(x2,x2);
 		u[0]=new BIG(e);
@@ -380,8 +523,8 @@ public final class PAIR192 {
 	{
 		BIG[] u=new BIG[8];
 
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=CONSTANTS.CURVE_ORDER;
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG w=new BIG(e);
 		for (int i=0;i<7;i++)
 		{
@@ -412,8 +555,8 @@ public final class PAIR192 {
 			int i,np,nn;
 			ECP Q=new ECP();
 			Q.copy(P); Q.affine();
-			BIG q=new BIG(ROM.CURVE_Order);
-			FP cru=new FP(new BIG(ROM.CURVE_Cru));
+			BIG q=CONSTANTS.CURVE_ORDER;
+			FP cru=PFCONSTANTS.CURVE_CRU;
 			BIG t=new BIG(0);
 			BIG[] u=glv(e);
 			Q.getx().mul(cru);
@@ -456,7 +599,7 @@ public final class PAIR192 {
 			ECP4[] Q=new ECP4[8];
 			FP2[] F=ECP4.frob_constants();
 
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG[] u=gs(e);
 
 			BIG t=new BIG(0);
@@ -498,8 +641,8 @@ public final class PAIR192 {
 		if (CONFIG_CURVE.USE_GS_GT)
 		{
 			FP24[] g=new FP24[8];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			BIG q=new BIG(ROM.CURVE_Order);
+			FP2 f=PFCONSTANTS.FROB;
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG t=new BIG(0);
 			int i,np,nn;
 			BIG[] u=gs(e);
@@ -531,5 +674,31 @@ public final class PAIR192 {
 		return r;
 	}
 
+/* true if P is in G1. Scott's test with the endomorphism (x,y)->(cru.x,y), which acts on G1 as -x^4, and nowhere else - */
+/* so it costs four multiplications by x rather than one by the group order. */
+	public static boolean G1member(ECP P)
+	{
+		if (P.is_infinity()) return false;
+		byte[] d=PFCONSTANTS.CURVE_BNX_NAF;
+		ECP T=new ECP(P);
+		for (int i=0;i<4;i++) T=T.mulnaf(d);
+		T.neg();
+		ECP W=new ECP(P);
+		W.getx().mul(PFCONSTANTS.CURVE_CRU);
+		return W.equals(T);
+	}
+
+/* true if P is in G2 - Scott's test psi(P)=x.P, where psi is the untwist-Frobenius-twist endomorphism. */
+/* It costs one multiplication by x */
+	public static boolean G2member(ECP4 P)
+	{
+		if (P.is_infinity()) return false;
+		ECP4 T=P.mulByX();
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) T.neg();
+		ECP4 W=new ECP4(P);
+		W.frob(ECP4.frob_constants(),1);
+		return W.equals(T);
+	}
+
 }
 
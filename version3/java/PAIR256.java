@@ -21,6 +21,12 @@ under the License.
 
 package org.apache.milagro.amcl.XXX;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
 public final class PAIR256 {
 
 //	public static final boolean GT_STRONG=false;
@@ -130,7 +136,7 @@ public final class PAIR256 {
 	public static FP48 ate(ECP8 P1,ECP Q1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG n=new BIG(x);
 		FP48 lv;
 		int bt;
@@ -189,7 +195,7 @@ public final class PAIR256 {
 	public static FP48 ate2(ECP8 P1,ECP Q1,ECP8 R1,ECP S1)
 	{
 		FP2 f;
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG n=new BIG(x);
 		FP48 lv;
 		int bt;
@@ -264,11 +270,148 @@ public final class PAIR256 {
 		return r;
 	}
 
+/* Optimal R-ate multi-pairing e(P[0],Q[0]).e(P[1],Q[1])...e(P[n-1],Q[n-1]), without the final exponentiation. */
+/* All the pairs share one Miller loop, so there is just one squaring of the accumulator per bit, */
+/* and the cost grows with the number of line functions. Pairs with a point at infinity are skipped. */
+	public static FP48 multiAte(ECP8[] P1,ECP[] Q1)
+	{
+		FP2 f;
+		BIG x=PFCONSTANTS.CURVE_BNX;
+		BIG n=new BIG(x);
+		FP48 lv;
+		int i,j,m,bt;
+
+		for (m=j=0;j<P1.length;j++)
+			if (!P1[j].is_infinity() && !Q1[j].is_infinity()) m++;
+
+// P[] is needed in affine form for line function, Q[] for (Qx,Qy) extraction
+		ECP8[] P=new ECP8[m];
+		ECP[] Q=new ECP[m];
+		for (m=j=0;j<P1.length;j++)
+		{
+			if (P1[j].is_infinity() || Q1[j].is_infinity()) continue;
+			P[m]=new ECP8(P1[j]);
+			Q[m]=new ECP(Q1[j]);
+			m++;
+		}
+		ECP8.affineBatch(P);
+		ECP.affineBatch(Q);
+		BIG n3=new BIG(n);
+		n3.pmul(3);
+		n3.norm();
+
+		FP[] Qx=new FP[m];
+		FP[] Qy=new FP[m];
+		ECP8[] A=new ECP8[m];
+		ECP8[] MP=new ECP8[m];
+		FP48 r=new FP48(1);
+
+		for (j=0;j<m;j++)
+		{
+			Qx[j]=new FP(Q[j].getx());
+			Qy[j]=new FP(Q[j].gety());
+			A[j]=new ECP8(); A[j].copy(P[j]);
+			MP[j]=new ECP8(); MP[j].copy(P[j]); MP[j].neg();
+		}
+
+		int nb=n3.nbits();
+
+		for (i=nb-2;i>=1;i--)
+		{
+			r.sqr();
+			for (j=0;j<m;j++)
+			{
+				lv=line(A[j],A[j],Qx[j],Qy[j]);
+				r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+			}
+
+			bt=n3.bit(i)-n.bit(i); 
+			if (bt==1)
+			{
+				for (j=0;j<m;j++)
+				{
+					lv=line(A[j],P[j],Qx[j],Qy[j]);
+					r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				}
+			}
+			if (bt==-1)
+			{
+				for (j=0;j<m;j++)
+				{
+					lv=line(A[j],MP[j],Qx[j],Qy[j]);
+					r.smul(lv,CONFIG_CURVE.SEXTIC_TWIST);
+				}
+			}
+		}
+
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX)
+		{
+			r.conj();
+		}
+		return r;
+	}
+
+/* As multiAte(), but with the pairs split into chunks, whose Miller loops run as separate tasks on ex. */
+/* The partial products are multiplied together, so follow with one fexp(). chunks sets the parallelism, */
+/* and the last chunk runs on the calling thread. If anything fails, the tasks still running are cancelled */
+	public static FP48 multiAte(ECP8[] P,ECP[] Q,Executor ex,int chunks)
+	{
+		int i,n=P.length;
+		if (chunks>n) chunks=n;
+		if (chunks<=1) return multiAte(P,Q);
+
+		ArrayList<FutureTask<FP48>> tasks=new ArrayList<FutureTask<FP48>>();
+		for (i=0;i<chunks-1;i++)
+		{
+			FutureTask<FP48> t=new FutureTask<FP48>(chunk(P,Q,(int)((long)n*i/chunks),(int)((long)n*(i+1)/chunks)));
+			ex.execute(t);
+			tasks.add(t);
+		}
+		FP48 r;
+		try {
+			r=partial(P,Q,(int)((long)n*(chunks-1)/chunks),n);
+			for (i=0;i<chunks-1;i++)
+				r.mul(tasks.get(i).get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			Throwable c=e.getCause();
+			if (c instanceof RuntimeException) throw (RuntimeException)c;
+			if (c instanceof Error) throw (Error)c;
+			throw new IllegalStateException(c);
+		} finally {
+			for (FutureTask<FP48> t : tasks) t.cancel(true);	/* no-op for those done - stops the rest if this failed */
+		}
+		return r;
+	}
+
+/* the Miller loop of the pairs lo..hi-1 */
+	private static FP48 partial(ECP8[] P,ECP[] Q,int lo,int hi)
+	{
+		ECP8[] PC=new ECP8[hi-lo];
+		ECP[] QC=new ECP[hi-lo];
+		System.arraycopy(P,lo,PC,0,hi-lo);
+		System.arraycopy(Q,lo,QC,0,hi-lo);
+		return multiAte(PC,QC);
+	}
+
+/* partial() as a task */
+	private static Callable<FP48> chunk(final ECP8[] P,final ECP[] Q,final int lo,final int hi)
+	{
+		return new Callable<FP48>() {
+			public FP48 call()
+			{
+				return partial(P,Q,lo,hi);
+			}
+		};
+	}
+
 /* final exponentiation - keep separate for multi-pairings and to avoid thrashing stack */
 	public static FP48 fexp(FP48 m)
 	{
-		FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		FP2 f=PFCONSTANTS.FROB;
+		BIG x=new BIG(PFCONSTANTS.CURVE_BNX);
 		FP48 r=new FP48(m);
 
 /* Easy part of final exp */
@@ -286,10 +429,10 @@ public final class PAIR256 {
 // Ghamman & Fouotsa Method
 
 		t7=new FP48(r); t7.usqr();
-		t1=t7.pow(x);
+		t1=t7.cycpow(x);
 
 		x.fshr(1);
-		t2=t1.pow(x);
+		t2=t1.cycpow(x);
 		x.fshl(1);
 
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
@@ -302,14 +445,14 @@ public final class PAIR256 {
 
 		r.mul(t7);
 
-		t1=t2.pow(x);
+		t1=t2.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
 		t3.copy(t1);
 		t3.frob(f,14);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -317,7 +460,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,13);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -325,7 +468,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,12);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -333,7 +476,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,11);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -341,7 +484,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,10);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -349,7 +492,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,9);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -357,7 +500,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,8);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -367,7 +510,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,7);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -375,7 +518,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,6);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -383,7 +526,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,5);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -391,7 +534,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,4);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -399,7 +542,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,3);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -407,7 +550,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,2);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -415,7 +558,7 @@ public final class PAIR256 {
 		t3.copy(t1);
 		t3.frob(f,1);
 		r.mul(t3);
-		t1=t1.pow(x);
+		t1=t1.cycpow(x);
 		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) {
 			t1.conj();
 		}
@@ -433,8 +576,8 @@ public final class PAIR256 {
 	{
 		BIG[] u=new BIG[2];
 // -(x^8).P = (Beta.x,y)
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=CONSTANTS.CURVE_ORDER;
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG x2=BIG.smul(x,x);
 		x=BIG.smul(x2,x2);
 		x2=BIG.smul(x,x);
@@ -452,8 +595,8 @@ public final class PAIR256 {
 	{
 		BIG[] u=new BIG[16];
 
-		BIG q=new BIG(ROM.CURVE_Order);
-		BIG x=new BIG(ROM.CURVE_Bnx);
+		BIG q=CONSTANTS.CURVE_ORDER;
+		BIG x=PFCONSTANTS.CURVE_BNX;
 		BIG w=new BIG(e);
 		for (int i=0;i<15;i++)
 		{
@@ -488,8 +631,8 @@ public final class PAIR256 {
 			int i,np,nn;
 			ECP Q=new ECP(); 
 			Q.copy(P); Q.affine();
-			BIG q=new BIG(ROM.CURVE_Order);
-			FP cru=new FP(new BIG(ROM.CURVE_Cru));
+			BIG q=CONSTANTS.CURVE_ORDER;
+			FP cru=PFCONSTANTS.CURVE_CRU;
 			BIG t=new BIG(0);
 			BIG[] u=glv(e);
 			Q.getx().mul(cru);
@@ -532,7 +675,7 @@ public final class PAIR256 {
 			ECP8[] Q=new ECP8[16];
 			FP2[] F=ECP8.frob_constants();
 
-			BIG q=new BIG(ROM.CURVE_Order);
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG[] u=gs(e);
 
 			BIG t=new BIG(0);
@@ -574,8 +717,8 @@ public final class PAIR256 {
 		if (CONFIG_CURVE.USE_GS_GT)
 		{
 			FP48[] g=new FP48[16];
-			FP2 f=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb));
-			BIG q=new BIG(ROM.CURVE_Order);
+			FP2 f=PFCONSTANTS.FROB;
+			BIG q=CONSTANTS.CURVE_ORDER;
 			BIG t=new BIG(0);
 			int i,np,nn;
 			BIG[] u=gs(e);
@@ -606,5 +749,31 @@ public final class PAIR256 {
 		}
 		return r;
 	}
+
+/* true if P is in G1. Scott's test with the endomorphism (x,y)->(cru.x,y), which acts on G1 as -x^8, and nowhere else - */
+/* so it costs eight multiplications by x rather than one by the group order. */
+	public static boolean G1member(ECP P)
+	{
+		if (P.is_infinity()) return false;
+		byte[] d=PFCONSTANTS.CURVE_BNX_NAF;
+		ECP T=new ECP(P);
+		for (int i=0;i<8;i++) T=T.mulnaf(d);
+		T.neg();
+		ECP W=new ECP(P);
+		W.getx().mul(PFCONSTANTS.CURVE_CRU);
+		return W.equals(T);
+	}
+
+/* true if P is in G2 - Scott's test psi(P)=x.P, where psi is the untwist-Frobenius-twist endomorphism. */
+/* It costs one multiplication by x */
+	public static boolean G2member(ECP8 P)
+	{
+		if (P.is_infinity()) return false;
+		ECP8 T=P.mulByX();
+		if (CONFIG_CURVE.SIGN_OF_X==CONFIG_CURVE.NEGATIVEX) T.neg();
+		ECP8 W=new ECP8(P);
+		W.frob(ECP8.frob_constants(),1);
+		return W.equals(T);
+	}
 }
 
@@ -0,0 +1,68 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Pairing-friendly curve constants, decoded once from the ROM tables */
+/* These objects are shared by all threads, so they are kept inside the package, and must never be modified */
+
+package org.apache.milagro.amcl.XXX;
+
+final class PFCONSTANTS {
+	static final BIG CURVE_BNX=new BIG(ROM.CURVE_Bnx);
+	static final FP CURVE_CRU=new FP(new BIG(ROM.CURVE_Cru));
+	static final FP2 FROB=new FP2(new BIG(ROM.Fra),new BIG(ROM.Frb)); /* Frobenius constant */
+	static final FP2 FROB_TWIST=new FP2(FROB);	/* Frobenius constant as applied to points on the twist */
+	static final DBIG MODULUS_R=new DBIG(0);	/* Modulus in the upper half of a DBIG - keeps unreduced products positive */
+	static final byte[] CURVE_BNX_NAF=naf(CURVE_BNX);	/* NAF digits of |x|, most significant first */
+
+	static {
+		MODULUS_R.ucopy(CONSTANTS.MODULUS);
+		CURVE_CRU.reduce();
+		FROB.reduce();
+		if (CONFIG_CURVE.SEXTIC_TWIST==CONFIG_CURVE.M_TYPE)
+		{
+			FROB_TWIST.inverse();
+			FROB_TWIST.norm();
+		}
+		FROB_TWIST.reduce();
+	}
+
+/* non-adjacent form of e>0, digits 0,1,-1 from the top, so multiplication by e is a signed addition chain */
+	static byte[] naf(BIG e)
+	{
+		BIG t=new BIG(e);
+		byte[] d=new byte[t.nbits()+1];
+		int i,n=0;
+		t.norm();
+		while (!t.iszilch())
+		{
+			if (t.parity()==1)
+			{
+				d[n]=(byte)(2-t.lastbits(2));
+				if (d[n]==1) t.dec(1);
+				else t.inc(1);
+				t.norm();
+			}
+			t.fshr(1);
+			n++;
+		}
+		byte[] r=new byte[n];
+		for (i=0;i<n;i++) r[i]=d[n-1-i];
+		return r;
+	}
+}
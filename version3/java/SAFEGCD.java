@@ -0,0 +1,190 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* Constant time modular inversion using the divsteps of Bernstein and Yang ("safegcd") */
+/* see https://eprint.iacr.org/2019/266. Numbers are held as signed 30-bit limbs, and each */
+/* batch of 30 divsteps is worked out from the bottom limbs of f and g alone */
+
+package org.apache.milagro.amcl.XXX;
+
+public final class SAFEGCD {
+	private static final int M30=0x3FFFFFFF;
+	private static final int L=(BIG.NLEN*CONFIG_BIG.BASEBITS)/30+2;	/* number of 30-bit limbs */
+
+	private final int[] m=new int[L];	/* the modulus */
+	private final int mi;			/* 1/modulus mod 2^30 */
+	private final int n;			/* number of batches of 30 divsteps */
+
+/* set up for inversion mod p, where p is odd */
+	public SAFEGCD(BIG p)
+	{
+		int d=p.nbits();
+		int s=(d<46)?(49*d+80)/17:(49*d+57)/17;	/* divsteps needed to reach g=0 for d-bit inputs */
+		int v,inv;
+		n=(s+29)/30;
+		load(m,p);
+		v=m[0];
+		inv=v;
+		for (int i=0;i<4;i++)
+			inv*=2-v*inv;
+		mi=inv&M30;
+	}
+
+/* r=x as 30-bit limbs. x is non-negative */
+	private static void load(int[] r,BIG x)
+	{
+		BIG t=new BIG(x);
+		for (int i=0;i<L;i++)
+		{
+			r[i]=t.lastbits(15); t.shr(15);
+			r[i]|=t.lastbits(15)<<15; t.shr(15);
+		}
+	}
+
+/* x=r, where r is non-negative and normalised */
+	private static void store(BIG x,int[] r)
+	{
+		x.zero();
+		for (int i=L-1;i>=0;i--)
+		{
+			x.shl(15); x.inc(r[i]>>15);
+			x.shl(15); x.inc(r[i]&0x7FFF);
+		}
+	}
+
+/* 30 divsteps, from the bottom 30 bits of f and g. t gets 2^30 times the transition matrix */
+/* eta=-delta, and the new eta is returned */
+	private static int divsteps(int eta,int f,int g,int[] t)
+	{
+		int u=1,v=0,q=0,r=1;
+		int c1,c2,x,y,z;
+		for (int i=0;i<30;i++)
+		{
+			c1=eta>>31;		/* delta>0 */
+			c2=-(g&1);		/* g odd */
+			x=(f^c1)-c1;
+			y=(u^c1)-c1;
+			z=(v^c1)-c1;
+			g+=x&c2; q+=y&c2; r+=z&c2;
+			c1&=c2;			/* swap f and g */
+			eta=(eta^c1)-1-c1;
+			f+=g&c1; u+=q&c1; v+=r&c1;
+			g>>=1; u<<=1; v<<=1;
+		}
+		t[0]=u; t[1]=v; t[2]=q; t[3]=r;
+		return eta;
+	}
+
+/* [f,g]=t.[f,g]/2^30 - exact */
+	private static void updatefg(int[] f,int[] g,int[] t)
+	{
+		int u=t[0],v=t[1],q=t[2],r=t[3];
+		long cf=(long)u*f[0]+(long)v*g[0];
+		long cg=(long)q*f[0]+(long)r*g[0];
+		cf>>=30; cg>>=30;
+		for (int i=1;i<L;i++)
+		{
+			cf+=(long)u*f[i]+(long)v*g[i];
+			cg+=(long)q*f[i]+(long)r*g[i];
+			f[i-1]=(int)cf&M30; cf>>=30;
+			g[i-1]=(int)cg&M30; cg>>=30;
+		}
+		f[L-1]=(int)cf;
+		g[L-1]=(int)cg;
+	}
+
+/* [d,e]=t.[d,e]/2^30 mod the modulus. d and e stay in (-2.modulus,modulus) */
+	private void updatede(int[] d,int[] e,int[] t)
+	{
+		int u=t[0],v=t[1],q=t[2],r=t[3];
+		int sd=d[L-1]>>31;
+		int se=e[L-1]>>31;
+		int md=(u&sd)+(v&se);
+		int me=(q&sd)+(r&se);
+		long cd=(long)u*d[0]+(long)v*e[0];
+		long ce=(long)q*d[0]+(long)r*e[0];
+
+/* choose md,me so that the bottom 30 bits of t.[d,e]+modulus.[md,me] are zero */
+		md-=(mi*(int)cd+md)&M30;
+		me-=(mi*(int)ce+me)&M30;
+		cd+=(long)m[0]*md;
+		ce+=(long)m[0]*me;
+		cd>>=30; ce>>=30;
+		for (int i=1;i<L;i++)
+		{
+			cd+=(long)u*d[i]+(long)v*e[i]+(long)m[i]*md;
+			ce+=(long)q*d[i]+(long)r*e[i]+(long)m[i]*me;
+			d[i-1]=(int)cd&M30; cd>>=30;
+			e[i-1]=(int)ce&M30; ce>>=30;
+		}
+		d[L-1]=(int)cd;
+		e[L-1]=(int)ce;
+	}
+
+/* propagate carries, leaving the sign in the top limb */
+	private static void carry(int[] r)
+	{
+		for (int i=0;i<L-1;i++)
+		{
+			r[i+1]+=r[i]>>30; r[i]&=M30;
+		}
+	}
+
+/* bring r from (-2.modulus,modulus) into [0,modulus), negating it if s<0 */
+	private void normalise(int[] r,int s)
+	{
+		int c=r[L-1]>>31;
+		for (int i=0;i<L;i++)
+			r[i]+=m[i]&c;
+		c=s>>31;
+		for (int i=0;i<L;i++)
+			r[i]=(r[i]^c)-c;
+		carry(r);
+		c=r[L-1]>>31;
+		for (int i=0;i<L;i++)
+			r[i]+=m[i]&c;
+		carry(r);
+	}
+
+/* x=1/x mod the modulus, in constant time. x must be less than the modulus. 1/0 gives 0 */
+	public void inverse(BIG x)
+	{
+		int[] d=new int[L];
+		int[] e=new int[L];
+		int[] f=new int[L];
+		int[] g=new int[L];
+		int[] t=new int[4];
+		int eta=-1;
+
+		e[0]=1;
+		for (int i=0;i<L;i++)
+			f[i]=m[i];
+		load(g,x);
+
+/* f=modulus and g=x go to f=+/-1 and g=0, and d.x=f mod the modulus */
+		for (int i=0;i<n;i++)
+		{
+			eta=divsteps(eta,f[0],g[0],t);
+			updatede(d,e,t);
+			updatefg(f,g,t);
+		}
+		normalise(d,f[L-1]);
+		store(x,d);
+	}
+}
@@ -158,6 +158,32 @@ public class SHA3 {
 		if ((length%rate)==0) transform();
 	}
 
+/* process n bytes of b, starting at offset off. Whole 64-bit lanes are absorbed at once */
+	public void process_array(byte[] b,int off,int n)
+	{
+		int i,j,k,cnt;
+		long w;
+		while (n>0 && (length%8)!=0) {process(b[off++]); n--;}
+		while (n>=8)
+		{ /* rate is a whole number of lanes, so a lane never straddles a transform */
+			cnt=(int)(length%rate)/8;
+			i=cnt%5; j=cnt/5;
+			w=0;
+			for (k=7;k>=0;k--) w=(w<<8)|(b[off+k]&0xff);
+			S[i][j]^=w;
+			off+=8; n-=8;
+			length+=8;
+			if ((length%rate)==0) transform();
+		}
+		while (n>0) {process(b[off++]); n--;}
+	}
+
+/* process an array of bytes */
+	public void process_array(byte[] b)
+	{
+		process_array(b,0,b.length);
+	}
+
 /* squeeze the sponge */
 	public byte[] squeeze(byte[] buff,int olen)
 	{
@@ -21,7 +21,9 @@ under the License.
 package org.apache.milagro.amcl.XXX;  //
 
 import junit.framework.TestCase;      //
+import java.nio.ByteBuffer;
 import org.apache.milagro.amcl.RAND;
+import org.apache.milagro.amcl.SHA3;
 
 public class TestBLS extends TestCase //
 {
@@ -33,7 +35,16 @@ public class TestBLS extends TestCase //
 			System.out.printf("%02x", array[i]);
 		}
 		System.out.println();
-	}    
+	}
+
+	private static String toHex(byte[] array)
+	{
+		StringBuilder sb=new StringBuilder();
+		for (int i=0;i<array.length;i++)
+			sb.append(String.format("%02x",array[i]));
+		return sb.toString();
+	}
+    
 
 	public static void testBLS()
 	{
@@ -70,6 +81,136 @@ public class TestBLS extends TestCase //
 			System.out.println("Signature is OK");
 		else
 			fail("Signature is *NOT* OK");
- 
+
+/* known answers for private key 0x0102..10 and message "abc". sign() hashes as the other language */
+/* versions do, and signSvdW() with the Shallue-van de Woestijne map */
+		String[][] KAT={
+			{"BN254",
+			 "031bd64257673ad7a86bd266d6ba5e669b660a774949f42298c7837f62d395b812",
+			 "03034386fd521988baf8a39bb2af8f34e99c6be09339e416309a64104945c73273"},
+			{"BLS381",
+			 "0205bafa8f36b6ed15be1e1ec17e4f8bb9b4d823ff8a6fc341d2fa35972ba522c83681abf0491e11d7b073f3c4b1c6f6dd",
+			 "02083ea92e18129d99a9e28f7651ad0b810d2e963229485e14b116a8bf7a834be07ac04d6989b26d32abd2e29e1624775a"}};
+		String curve=TestBLS.class.getPackage().getName();
+		curve=curve.substring(curve.lastIndexOf('.')+1);
+		byte[] SK=new byte[BGS];
+		byte[] WK=new byte[G2S];
+		byte[] SG=new byte[G1S];
+		for (int i=0;i<16;i++) SK[BGS-16+i]=(byte)(i+1);
+		ECP2.generator().mul(BIG.fromBytes(SK)).toBytes(WK);
+		for (int i=0;i<KAT.length;i++)
+		{
+			if (!KAT[i][0].equals(curve)) continue;
+			BLS.sign(SG,"abc",SK);
+			if (!toHex(SG).equals(KAT[i][1]) || BLS.verify(SG,"abc",WK)!=0 || BLS.verifySvdW(SG,"abc",WK)==0)
+				fail("Known answer signature is *NOT* OK");
+			BLS.signSvdW(SG,"abc",SK);
+			if (!toHex(SG).equals(KAT[i][2]) || BLS.verifySvdW(SG,"abc",WK)!=0 || BLS.verify(SG,"abc",WK)==0)
+				fail("Known answer SvdW signature is *NOT* OK");
+			System.out.println("Known answers are OK");
+		}
+
+		byte[] M=mess.getBytes();
+		BLS.clearHashCache();
+		if (BLS.verify(SIG,M,W)!=0 || BLS.hashCacheMisses()!=1)
+			fail("Signature on bytes is *NOT* OK");
+		ByteBuffer B=ByteBuffer.allocateDirect(M.length);
+		B.put(M); B.flip();
+		if (!BLS.bls_hashit(B).equals(BLS.bls_hashit(mess)) || BLS.hashCacheHits()!=2)
+			fail("Message hash cache failed");
+/* array backed buffers, at a non-zero position and a non-zero array offset */
+		byte[] MB=new byte[M.length+5];
+		for (int i=0;i<M.length;i++) MB[i+2]=M[i];
+		B=ByteBuffer.wrap(MB,2,M.length);
+		if (BLS.verify(SIG,B,W)!=0 || B.hasRemaining())
+			fail("Signature on buffer is *NOT* OK");
+		B=ByteBuffer.wrap(MB);
+		B.position(2); B=B.slice(); B.limit(M.length);
+		byte[] SB=new byte[G1S];
+		BLS.sign(SB,B,S);
+		for (int i=0;i<G1S;i++)
+			if (SB[i]!=SIG[i]) fail("Signature of buffer is *NOT* OK");
+
+/* a key on the twist but not in G2 stays rejected, even once prepared unchecked */
+		ECP2 Q=new ECP2();
+		for (int i=1;Q.is_infinity() || PAIR.G2member(Q);i++)
+			Q=new ECP2(new FP2(i));
+		byte[] WN=new byte[G2S];
+		Q.toBytes(WN);
+		G2Prepared.get(Q);
+		if (!G2Prepared.fromBytes(WN).is_infinity() || BLS.verify(SIG,mess,WN)==0)
+			fail("Key not in G2 is OK");
+
+		byte[] L=new byte[1000];
+		byte[] h1=new byte[BFS];
+		byte[] h2=new byte[BFS];
+		for (int i=0;i<L.length;i++) L[i]=(byte)(i*7);
+		SHA3 sh=new SHA3(SHA3.SHAKE256);
+		for (int i=3;i<L.length;i++) sh.process(L[i]);
+		sh.shake(h1,BFS);
+		sh=new SHA3(SHA3.SHAKE256);
+		sh.process(L[3]); sh.process_array(L,4,L.length-4);
+		sh.shake(h2,BFS);
+		for (int i=0;i<BFS;i++)
+			if (h1[i]!=h2[i]) fail("SHA3 bulk input failed");
+
+		int n=8;
+		byte[][] SIGB=new byte[n][G1S];
+		byte[][] WB=new byte[n][G2S];
+		String[] messb=new String[n];
+		int[] resb=new int[n];
+		for (int i=0;i<n;i++)
+		{
+			messb[i]=mess+" "+i;
+			BLS.KeyPairGenerate(rng,S,WB[i]);
+			BLS.sign(SIGB[i],messb[i],S);
+		}
+
+		if (BLS.verifyBatch(SIGB,messb,WB,rng)==0)
+			System.out.println("Batch is OK");
+		else
+			fail("Batch is *NOT* OK");
+
+		messb[5]=mess;
+		if (BLS.verifyBatch(SIGB,messb,WB,rng,resb)==0)
+			fail("Bad batch is OK");
+		for (int i=0;i<n;i++)
+			if ((resb[i]==0)!=(i!=5))
+				fail("Bad signature not found");
+		System.out.println("Bad signature found");
+
+		int na=4;
+		byte[][] SIGA=new byte[na][G1S];
+		byte[][] WA=new byte[na][G2S];
+		String[] messa=new String[na];
+		byte[] AS=new byte[G1S];
+		for (int i=0;i<na;i++)
+		{
+			messa[i]=mess+" by "+i;
+			BLS.KeyPairGenerate(rng,S,WA[i]);
+			BLS.sign(SIGA[i],messa[i],S);
+		}
+		BLS.aggregateSignatures(AS,SIGA);
+		if (BLS.verifyAggregateDistinctMessages(AS,messa,WA)==0)
+			System.out.println("Aggregate signature is OK");
+		else
+			fail("Aggregate signature is *NOT* OK");
+		messa[2]=messa[1];
+		if (BLS.verifyAggregateDistinctMessages(AS,messa,WA)==0)
+			fail("Aggregate signature on repeated message is OK");
+
+		for (int i=0;i<na;i++)
+		{
+			BLS.KeyPairGenerate(rng,S,WA[i]);
+			BLS.sign(SIGA[i],mess,S);
+		}
+		BLS.aggregateSignatures(AS,SIGA);
+		BLS.aggregatePublicKeys(W,WA);
+		if (BLS.verifyAggregateSameMessage(AS,mess,WA)==0 && BLS.verify(AS,mess,W)==0)
+			System.out.println("Aggregate signature on one message is OK");
+		else
+			fail("Aggregate signature on one message is *NOT* OK");
+		if (BLS.verifyAggregateSameMessage(SIGA[0],mess,WA)==0)
+			fail("Single signature for aggregate is OK");
 	}
 }
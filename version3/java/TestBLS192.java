@@ -33,7 +33,16 @@ public class TestBLS192 extends TestCase //
 			System.out.printf("%02x", array[i]);
 		}
 		System.out.println();
-	}    
+	}
+
+	private static String toHex(byte[] array)
+	{
+		StringBuilder sb=new StringBuilder();
+		for (int i=0;i<array.length;i++)
+			sb.append(String.format("%02x",array[i]));
+		return sb.toString();
+	}
+    
 
 	public static void testBLS192()
 	{
@@ -70,6 +79,64 @@ public class TestBLS192 extends TestCase //
 			System.out.println("Signature is OK");
 		else
 			fail("Signature is *NOT* OK");
- 
+
+/* known answers for private key 0x0102..10 and message "abc". sign() hashes as the other language */
+/* versions do, and signSvdW() with the Shallue-van de Woestijne map */
+		String[][] KAT={
+			{"BLS24",
+			 "0214c9d9ede75cb3cd29992eae21987e4eada1a9d90a15492ef30df6d5ffdeb28d7c9d8a9c68b20597effd78f2d51458c35a7bbc31114ec94c0b6c02d5",
+			 "02196dd69df794b284e62d8de3a1a76fa2163b241f4c78532030b030927062cc41afcc62bbc10e2a4e9bc03df5656a13e82ba47f3399622b69548ee3c7"}};
+		String curve=TestBLS192.class.getPackage().getName();
+		curve=curve.substring(curve.lastIndexOf('.')+1);
+		byte[] SK=new byte[BGS];
+		byte[] WK=new byte[G2S];
+		byte[] SG=new byte[G1S];
+		for (int i=0;i<16;i++) SK[BGS-16+i]=(byte)(i+1);
+		ECP4.generator().mul(BIG.fromBytes(SK)).toBytes(WK);
+		for (int i=0;i<KAT.length;i++)
+		{
+			if (!KAT[i][0].equals(curve)) continue;
+			BLS192.sign(SG,"abc",SK);
+			if (!toHex(SG).equals(KAT[i][1]) || BLS192.verify(SG,"abc",WK)!=0 || BLS192.verifySvdW(SG,"abc",WK)==0)
+				fail("Known answer signature is *NOT* OK");
+			BLS192.signSvdW(SG,"abc",SK);
+			if (!toHex(SG).equals(KAT[i][2]) || BLS192.verifySvdW(SG,"abc",WK)!=0 || BLS192.verify(SG,"abc",WK)==0)
+				fail("Known answer SvdW signature is *NOT* OK");
+			System.out.println("Known answers are OK");
+		}
+
+		int na=4;
+		byte[][] SIGA=new byte[na][G1S];
+		byte[][] WA=new byte[na][G2S];
+		String[] messa=new String[na];
+		byte[] AS=new byte[G1S];
+		for (int i=0;i<na;i++)
+		{
+			messa[i]=mess+" by "+i;
+			BLS192.KeyPairGenerate(rng,S,WA[i]);
+			BLS192.sign(SIGA[i],messa[i],S);
+		}
+		BLS192.aggregateSignatures(AS,SIGA);
+		if (BLS192.verifyAggregateDistinctMessages(AS,messa,WA)==0)
+			System.out.println("Aggregate signature is OK");
+		else
+			fail("Aggregate signature is *NOT* OK");
+		messa[2]=messa[1];
+		if (BLS192.verifyAggregateDistinctMessages(AS,messa,WA)==0)
+			fail("Aggregate signature on repeated message is OK");
+
+		for (int i=0;i<na;i++)
+		{
+			BLS192.KeyPairGenerate(rng,S,WA[i]);
+			BLS192.sign(SIGA[i],mess,S);
+		}
+		BLS192.aggregateSignatures(AS,SIGA);
+		BLS192.aggregatePublicKeys(W,WA);
+		if (BLS192.verifyAggregateSameMessage(AS,mess,WA)==0 && BLS192.verify(AS,mess,W)==0)
+			System.out.println("Aggregate signature on one message is OK");
+		else
+			fail("Aggregate signature on one message is *NOT* OK");
+		if (BLS192.verifyAggregateSameMessage(SIGA[0],mess,WA)==0)
+			fail("Single signature for aggregate is OK");
 	}
 }
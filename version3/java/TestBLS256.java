@@ -34,7 +34,16 @@ public class TestBLS256 extends TestCase //
 			System.out.printf("%02x", array[i]);
 		}
 		System.out.println();
-	}    
+	}
+
+	private static String toHex(byte[] array)
+	{
+		StringBuilder sb=new StringBuilder();
+		for (int i=0;i<array.length;i++)
+			sb.append(String.format("%02x",array[i]));
+		return sb.toString();
+	}
+    
 
 	public static void testBLS256()
 	{
@@ -71,6 +80,64 @@ public class TestBLS256 extends TestCase //
 			System.out.println("Signature is OK");
 		else
 			fail("Signature is *NOT* OK");
- 
+
+/* known answers for private key 0x0102..10 and message "abc". sign() hashes as the other language */
+/* versions do, and signSvdW() with the Shallue-van de Woestijne map */
+		String[][] KAT={
+			{"BLS48",
+			 "030c6f3684202f9098cd1f6e61dc4d37cf5fc24366434f50a7bb931a1aa4484b1a7ccd93fb28eb959ceb8dbddb43504008dc4dc4d8bf291aa5067080e8b1883d122783647ddb56",
+			 "0208cb1951255a4bbd6084f1e59fbc0324256fe034e3c7cd06fff629927ee1338dc50cc974ee3920bf31e2b6101680cb48b0b308053d52e6583deea8fc9c910352b03183061428"}};
+		String curve=TestBLS256.class.getPackage().getName();
+		curve=curve.substring(curve.lastIndexOf('.')+1);
+		byte[] SK=new byte[BGS];
+		byte[] WK=new byte[G2S];
+		byte[] SG=new byte[G1S];
+		for (int i=0;i<16;i++) SK[BGS-16+i]=(byte)(i+1);
+		ECP8.generator().mul(BIG.fromBytes(SK)).toBytes(WK);
+		for (int i=0;i<KAT.length;i++)
+		{
+			if (!KAT[i][0].equals(curve)) continue;
+			BLS256.sign(SG,"abc",SK);
+			if (!toHex(SG).equals(KAT[i][1]) || BLS256.verify(SG,"abc",WK)!=0 || BLS256.verifySvdW(SG,"abc",WK)==0)
+				fail("Known answer signature is *NOT* OK");
+			BLS256.signSvdW(SG,"abc",SK);
+			if (!toHex(SG).equals(KAT[i][2]) || BLS256.verifySvdW(SG,"abc",WK)!=0 || BLS256.verify(SG,"abc",WK)==0)
+				fail("Known answer SvdW signature is *NOT* OK");
+			System.out.println("Known answers are OK");
+		}
+
+		int na=4;
+		byte[][] SIGA=new byte[na][G1S];
+		byte[][] WA=new byte[na][G2S];
+		String[] messa=new String[na];
+		byte[] AS=new byte[G1S];
+		for (int i=0;i<na;i++)
+		{
+			messa[i]=mess+" by "+i;
+			BLS256.KeyPairGenerate(rng,S,WA[i]);
+			BLS256.sign(SIGA[i],messa[i],S);
+		}
+		BLS256.aggregateSignatures(AS,SIGA);
+		if (BLS256.verifyAggregateDistinctMessages(AS,messa,WA)==0)
+			System.out.println("Aggregate signature is OK");
+		else
+			fail("Aggregate signature is *NOT* OK");
+		messa[2]=messa[1];
+		if (BLS256.verifyAggregateDistinctMessages(AS,messa,WA)==0)
+			fail("Aggregate signature on repeated message is OK");
+
+		for (int i=0;i<na;i++)
+		{
+			BLS256.KeyPairGenerate(rng,S,WA[i]);
+			BLS256.sign(SIGA[i],mess,S);
+		}
+		BLS256.aggregateSignatures(AS,SIGA);
+		BLS256.aggregatePublicKeys(W,WA);
+		if (BLS256.verifyAggregateSameMessage(AS,mess,WA)==0 && BLS256.verify(AS,mess,W)==0)
+			System.out.println("Aggregate signature on one message is OK");
+		else
+			fail("Aggregate signature on one message is *NOT* OK");
+		if (BLS256.verifyAggregateSameMessage(SIGA[0],mess,WA)==0)
+			fail("Single signature for aggregate is OK");
 	}
 }
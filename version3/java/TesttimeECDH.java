@@ -20,7 +20,10 @@ under the License.
 /* test driver and function exerciser for ECDH/ECIES/ECDSA API Functions */
 package org.apache.milagro.amcl.XXX;
 
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 import org.apache.milagro.amcl.RAND;
 
@@ -28,6 +31,7 @@ public class TesttimeECDH extends TestCase
 {
 	public static final int MIN_TIME=10; /* seconds */
 	public static final int MIN_ITERS=10; 
+	public static final int BATCH_TIME=1; /* seconds, for each affine batch size */
 
 	public static void testtimeECDH()
 	{
@@ -99,5 +103,387 @@ public class TesttimeECDH extends TestCase
 		System.out.format("EC  mul - %8d iterations  ",iterations);
 		System.out.format(" %8.2f ms per iteration\n",dur);
 
+/* the same, with each window width */
+		for (int wd=3;wd<=6;wd++)
+		{
+			start = System.currentTimeMillis();
+			iterations=0;
+			do {
+				WP=G.mul(s,wd);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("EC  mul w=%d%s - %8d iterations  ",wd,(wd==CONFIG_CURVE.MUL_WINDOW)?"*":" ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+			if (!WP.equals(G.mul(s)) || !G.mul(r,wd).is_infinity())
+			{
+				fail("FAILURE - mul(s,w)!=sG");
+			}
+		}
+
+/* widths outside 2..6 are refused */
+		for (int wd=-1;wd<=9;wd++)
+		{
+			if (wd>=2 && wd<=6) continue;
+			try {
+				G.mul(s,wd);
+				fail("FAILURE - mul(s,"+wd+") accepted");
+			} catch (IllegalArgumentException x) {}
+		}
+
+		start = System.currentTimeMillis();
+		iterations=0;
+		do {
+			WP=ECP.genmul(s);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("EC  gen - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!WP.equals(G.mul(s)) || !ECP.genmul(r).is_infinity() || !ECP.genmul(new BIG(0)).is_infinity())
+		{
+			fail("FAILURE - genmul(s)!=sG");
+		}
+
+/* affine conversion one point at a time, and in batches with a shared inversion */
+		int[] sizes={16,256,4096};
+		ECP[] PP=new ECP[4096];
+		ECP[] QQ=new ECP[4096];
+		PP[0]=G.mul(s);
+		for (i=1;i<PP.length;i++)
+		{
+			PP[i]=new ECP(PP[i-1]);
+			if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.MONTGOMERY)
+			{ // P[i]=P[i-1]+G, where P[i-1]-G=P[i-2] must be affine
+				if (i==1) PP[i]=G.mul(s.plus(new BIG(1)));
+				else
+				{
+					WP.copy(PP[i-2]); WP.affine();
+					PP[i].dadd(G,WP);
+				}
+			}
+			else PP[i].add(G);
+		}
+		for (i=0;i<PP.length;i++)
+			QQ[i]=new ECP(PP[i]);
+		for (int n : sizes)
+		{
+			ECP[] B=new ECP[n];
+			double single,batch;
+			for (i=0;i<n;i++) B[i]=new ECP();
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				for (i=0;i<n;i++) { B[i].copy(PP[i]); B[i].affine(); }
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+			single=1000.0*elapsed/((double)iterations*n);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				for (i=0;i<n;i++) B[i].copy(PP[i]);
+				ECP.affineBatch(B);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+			batch=1000.0*elapsed/((double)iterations*n);
+
+			System.out.format("EC  affine x%-4d - %8.2f us per point, %8.2f us batched\n",n,single,batch);
+		}
+
+		ECP.affineBatch(QQ);
+		for (i=0;i<PP.length;i++)
+		{
+			WP.copy(PP[i]); WP.affine();
+			if (!WP.equals(QQ[i]) || BIG.comp(WP.getX(),QQ[i].getX())!=0)
+			{
+				fail("FAILURE - batch affine");
+			}
+		}
+
+/* hashing to the curve, try-and-increment and Shallue-van de Woestijne */
+		if (CONFIG_CURVE.CURVETYPE==CONFIG_CURVE.WEIERSTRASS)
+		{
+			byte[] h=new byte[CONFIG_BIG.MODBYTES];
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				h[iterations%h.length]++;
+				WP=ECP.mapit(h);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("EC  map - %8d iterations  ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				h[iterations%h.length]++;
+				WP=ECP.map2point(h);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("EC  svdw- %8d iterations  ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+
+			for (i=0;i<20;i++)
+			{
+				h[i%h.length]^=(byte)(i*37+1);
+				WP=ECP.map2point(h);
+				if (i==0) WP=ECP.svdw(new FP(0));
+				if (WP.is_infinity() || new ECP(WP.getX(),WP.getY()).is_infinity() || (i>0 && !WP.mul(r).is_infinity()))
+				{
+					fail("FAILURE - map2point not in group");
+				}
+			}
+		}
+
+/* multi-scalar multiplication - one mul() for each term, against Pippenger's method */
+		if (CONFIG_CURVE.CURVETYPE!=CONFIG_CURVE.MONTGOMERY)
+		{
+			BIG[] KK=new BIG[PP.length];
+			for (i=0;i<KK.length;i++)
+				KK[i]=BIG.randomnum(r,rng);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				WP=PP[iterations%PP.length].mul(KK[iterations%KK.length]);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+			double single=1000.0*elapsed/iterations;
+
+			for (int n : new int[] {16,256,4096})
+			{
+				ECP[] B=new ECP[n];
+				BIG[] K=new BIG[n];
+				System.arraycopy(PP,0,B,0,n);
+				System.arraycopy(KK,0,K,0,n);
+				start=System.currentTimeMillis();
+				iterations=0;
+				do {
+					WP=ECP.multiMul(B,K);
+					iterations++;
+					elapsed=(System.currentTimeMillis()-start);
+				} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+				System.out.format("EC  multiMul x%-4d - %8.2f us per term, %8.2f us by mul()\n",n,1000.0*elapsed/((double)iterations*n),single);
+			}
+
+			ECP[] B=new ECP[20];
+			BIG[] K=new BIG[20];
+			System.arraycopy(PP,0,B,0,20);
+			System.arraycopy(KK,0,K,0,20);
+			B[3]=new ECP();
+			K[7]=new BIG(0);
+			K[8]=new BIG(r);
+			B[9]=B[10];
+			WP=new ECP();
+			for (i=0;i<B.length;i++)
+				WP.add(B[i].mul(K[i]));
+			ExecutorService ex=Executors.newFixedThreadPool(3);
+			ECP MP=ECP.multiMul(B,K,ex,5);
+			ex.shutdown();
+			if (!WP.equals(ECP.multiMul(B,K)) || !WP.equals(MP))
+			{
+				fail("FAILURE - multiMul");
+			}
+		}
+
+/* decompression, and the point cache */
+		if (CONFIG_CURVE.CURVETYPE!=CONFIG_CURVE.MONTGOMERY)
+		{
+			byte[][] E=new byte[64][CONFIG_BIG.MODBYTES+1];
+			for (i=0;i<E.length;i++)
+				PP[i].toBytes(E[i],true);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				WP=ECP.fromBytes(E[iterations%E.length]);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+			System.out.format("EC  fromBytes       - %8.2f us per point\n",1000.0*elapsed/iterations);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				ECP.clearPointCache();
+				ECP.fromBytesCached(E);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+			System.out.format("EC  fromBytes x%d   - %8.2f us per point, uncached and validated\n",E.length,1000.0*elapsed/(iterations*E.length));
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				WP=ECP.fromBytesCached(E[iterations%E.length]);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<BATCH_TIME*1000 || iterations<MIN_ITERS);
+			System.out.format("EC  fromBytes       - %8.2f us per point, cached\n",1000.0*elapsed/iterations);
+
+			ECP.clearPointCache();
+			byte[][] F=new byte[8][];
+			for (i=0;i<F.length;i++)
+				F[i]=E[i%5];
+			F[6]=new byte[CONFIG_BIG.MODBYTES+1];
+			for (i=1;i<F[6].length;i++)
+				F[6][i]=(byte)0xff;
+			F[6][0]=0x02;
+			ECP[] D=ECP.fromBytesCached(F);
+			for (i=0;i<F.length;i++)
+			{
+				if (!D[i].equals(ECP.fromBytes(F[i])) || !ECP.fromBytesCached(F[i]).equals(D[i]))
+				{
+					fail("FAILURE - cached fromBytes");
+				}
+			}
+			if (ECP.pointCacheHits()!=7 || ECP.pointCacheMisses()!=9)
+			{
+				fail("FAILURE - point cache counts");
+			}
+		}
+
+/* ECDSA verification, one at a time and in a batch */
+		if (CONFIG_CURVE.CURVETYPE!=CONFIG_CURVE.MONTGOMERY)
+		{
+			int sha=CONFIG_CURVE.HASH_TYPE;
+			int nk=4,nb=32;
+			byte[][] SK=new byte[nk][ECDH.EGS];
+			byte[][] PK=new byte[nk][2*ECDH.EFS+1];
+			byte[][] BW=new byte[nb][];
+			byte[][] BM=new byte[nb][];
+			byte[][] BC=new byte[nb][ECDH.EGS];
+			byte[][] BD=new byte[nb][ECDH.EGS];
+			int[] res=new int[nb];
+
+			for (i=0;i<nk;i++)
+				ECDH.KEY_PAIR_GENERATE(rng,SK[i],PK[i]);
+			for (i=0;i<nb;i++)
+			{
+				BW[i]=PK[i%nk];
+				BM[i]=new byte[32];
+				BM[i][0]=(byte)i;
+				ECDH.SP_DSA(sha,rng,SK[i%nk],BM[i],BC[i],BD[i]);
+			}
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				ECDH.VP_DSA(sha,BW[iterations%nb],BM[iterations%nb],BC[iterations%nb],BD[iterations%nb]);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("ECDSA verify - %8d iterations  ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				ECDH.VP_DSA_BATCH(sha,BW,BM,BC,BD,res);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/(iterations*nb);
+			System.out.format("ECDSA batch %d - %8d signatures ",nb,iterations*nb);
+			System.out.format(" %8.2f ms per signature\n",dur);
+
+			if (ECDH.VP_DSA_BATCH(sha,BW,BM,BC,BD,res)!=0)
+			{
+				fail("FAILURE - ECDSA batch verify");
+			}
+			BM[3]=new byte[32];
+			BC[9]=new byte[ECDH.EGS];
+			BW[17]=new byte[2*ECDH.EFS+1];
+			BW[17][0]=0x04;
+			BD[30]=BD[29];
+			if (ECDH.VP_DSA_BATCH(sha,BW,BM,BC,BD,res)==0)
+			{
+				fail("FAILURE - ECDSA batch accepts bad signatures");
+			}
+			for (i=0;i<nb;i++)
+			{
+				if (res[i]!=ECDH.VP_DSA(sha,BW[i],BM[i],BC[i],BD[i]) || (res[i]==0)!=(i!=3 && i!=9 && i!=17 && i!=30))
+				{
+					fail("FAILURE - ECDSA batch verify result "+i);
+				}
+			}
+		}
+
+/* shared secrets, one at a time and in a batch */
+		{
+			int nb=32;
+			byte[][] BS=new byte[nb][ECDH.EGS];
+			byte[][] BW=new byte[nb][2*ECDH.EFS+1];
+			byte[][] BZ=new byte[nb][ECDH.EFS];
+			byte[] Z=new byte[ECDH.EFS];
+			byte[] S=new byte[ECDH.EGS];
+			int[] res=new int[nb];
+
+			for (i=0;i<nb;i++)
+				ECDH.KEY_PAIR_GENERATE(rng,BS[i],BW[i]);
+			ECDH.KEY_PAIR_GENERATE(rng,S,BW[0]);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				ECDH.SVDP_DH(BS[iterations%nb],BW[iterations%nb],Z);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("ECDH secret - %8d iterations  ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+
+			start=System.currentTimeMillis();
+			iterations=0;
+			do {
+				ECDH.SVDP_DH_BATCH(BS,BW,BZ,res);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/(iterations*nb);
+			System.out.format("ECDH batch %d - %8d secrets ",nb,iterations*nb);
+			System.out.format(" %8.2f ms per secret\n",dur);
+
+			if (ECDH.SVDP_DH_BATCH(BS,BW,BZ,res)!=0)
+			{
+				fail("FAILURE - ECDH batch secrets");
+			}
+			BS[5]=new byte[ECDH.EGS];
+			BW[20]=new byte[2*ECDH.EFS+1];
+			for (i=0;i<BW[20].length;i++) BW[20][i]=(byte)0xff;
+			if (ECDH.SVDP_DH_BATCH(BS,BW,BZ,res)==0)
+			{
+				fail("FAILURE - ECDH batch accepts bad keys");
+			}
+			for (i=0;i<nb;i++)
+			{
+				if (res[i]!=ECDH.SVDP_DH(BS[i],BW[i],Z) || (res[i]==0)!=(i!=5 && i!=20) || (res[i]==0 && !Arrays.equals(Z,BZ[i])))
+				{
+					fail("FAILURE - ECDH batch secret "+i);
+				}
+			}
+/* both sides of an exchange agree */
+			ECDH.SVDP_DH(S,BW[1],Z);
+			ECDH.SVDP_DH(BS[1],BW[0],BZ[1]);
+			if (!Arrays.equals(Z,BZ[1]))
+			{
+				fail("FAILURE - ECDH secrets differ");
+			}
+		}
 	}
 }
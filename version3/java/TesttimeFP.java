@@ -0,0 +1,241 @@
+/*
+Licensed to the Apache Software Foundation (ASF) under one
+or more contributor license agreements.  See the NOTICE file
+distributed with this work for additional information
+regarding copyright ownership.  The ASF licenses this file
+to you under the Apache License, Version 2.0 (the
+"License"); you may not use this file except in compliance
+with the License.  You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing,
+software distributed under the License is distributed on an
+"AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+KIND, either express or implied.  See the License for the
+specific language governing permissions and limitations
+under the License.
+*/
+
+/* test driver and timer for the BIG and FP arithmetic kernels */
+package org.apache.milagro.amcl.XXX;
+
+import junit.framework.TestCase;
+import org.apache.milagro.amcl.RAND;
+
+public class TesttimeFP extends TestCase
+{
+	public static final int MIN_TIME=2; /* seconds */
+	public static final int MIN_ITERS=10; 
+	public static final int BATCH=1000; /* operations per timing check */
+
+	private static void report(String op,long iterations,long elapsed)
+	{
+		double dur=(double)elapsed*1000000.0/(iterations*BATCH);
+		System.out.format("%-18s - %10d iterations  ",op,iterations*BATCH);
+		System.out.format(" %10.1f ns per iteration\n",dur);
+	}
+
+	public static void testtimeFP()
+	{
+		byte[] RAW=new byte[100];
+		RAND rng=new RAND();
+		int i;
+		long iterations,start,elapsed;
+
+		rng.clean();
+		for (i=0;i<100;i++) RAW[i]=(byte)(i);
+		rng.seed(100,RAW);
+
+		System.out.println("\nTiming BIG/FP arithmetic");
+		System.out.format("Modulus size %d bits\n",CONFIG_FIELD.MODBITS); 
+		System.out.format("%d bit build, %d limbs\n",BIG.CHUNK,BIG.NLEN); 
+
+		BIG m=new BIG(ROM.Modulus);
+		BIG a=BIG.randomnum(m,rng);
+		BIG b=BIG.randomnum(m,rng);
+		DBIG d=null;
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) d=BIG.mul(a,b);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("BIG mul",iterations,elapsed);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) d=BIG.sqr(a);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("BIG sqr",iterations,elapsed);
+
+		FP x=new FP(a);
+		FP y=new FP(b);
+		FP z=new FP(x);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) z.mul(y);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("FP mul",iterations,elapsed);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) z.sqr();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("FP sqr",iterations,elapsed);
+
+		FPScratch fs=FPScratch.get();
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) z.mul(z,y,fs);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("FP mul in-place",iterations,elapsed);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) z.inverse();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("FP inverse",iterations,elapsed);
+
+		FP[] v=new FP[50];	/* BATCH/50 batches of 50 */
+		for (i=0;i<v.length;i++)
+			v[i]=new FP(BIG.randomnum(m,rng));
+		FP[] vi=new FP[v.length];
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH/v.length;i++) FP.batchInverse(v,vi);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("FP batch inverse",iterations,elapsed);
+
+		BIG c=new BIG(a);
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			for (i=0;i<BATCH;i++) c.invmodp(m);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		report("BIG invmodp",iterations,elapsed);
+
+/* Karatsuba crossover - schoolbook, then one and two levels of splitting */
+		int[] kt={BIG.NLEN+1,BIG.NLEN,BIG.NLEN/2};
+		String[] kn={"schoolbook","1 level","2 levels"};
+		DBIG dk=new DBIG(0);
+		for (int l=0;l<kt.length && kt[l]>=4;l++)
+		{
+			iterations=0;
+			start=System.currentTimeMillis();
+			do {
+				for (i=0;i<BATCH;i++) BIG.mul(dk,a,b,kt[l]);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			report("BIG mul "+kn[l],iterations,elapsed);
+
+			iterations=0;
+			start=System.currentTimeMillis();
+			do {
+				for (i=0;i<BATCH;i++) BIG.sqr(dk,a,kt[l]);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			report("BIG sqr "+kn[l],iterations,elapsed);
+		}
+
+/* check the kernels against each other */
+		z.copy(x); z.sqr();
+		y.copy(x); y.mul(x);
+		if (!z.equals(y))
+		{
+			fail("FAILURE - x^2!=x.x");
+		}
+		y.sqr(x,fs);
+		if (!z.equals(y))
+		{
+			fail("FAILURE - in-place x^2!=x^2");
+		}
+/* an operand with too much excess is reduced for the product, but left as it was */
+		y.copy(x);
+		while ((long)y.XES*y.XES<=CONFIG_FIELD.FEXCESS) y.add(y);
+		FP yc=new FP(0);
+		yc.copy(y);
+		FP w=new FP(0);
+		z.mul(y,y,fs);
+		w.sqr(y,fs);
+		if (BIG.comp(y.x,yc.x)!=0 || y.XES!=yc.XES)
+		{
+			fail("FAILURE - in-place mul changes its operand");
+		}
+		yc.reduce(); yc.sqr();
+		if (!z.equals(yc) || !w.equals(yc))
+		{
+			fail("FAILURE - in-place mul of an operand with excess");
+		}
+		d=BIG.mul(a,a);
+		DBIG e=BIG.sqr(a);
+		d.norm(); e.norm();
+		if (DBIG.comp(d,e)!=0)
+		{
+			fail("FAILURE - BIG sqr(a)!=mul(a,a)");
+		}
+		BIG.mul(d,a,b,BIG.NLEN+1); BIG.mul(e,a,b,4);
+		d.norm(); e.norm();
+		if (DBIG.comp(d,e)!=0)
+		{
+			fail("FAILURE - Karatsuba a*b!=a*b");
+		}
+		BIG.sqr(d,a,BIG.NLEN+1); BIG.sqr(e,a,4);
+		d.norm(); e.norm();
+		if (DBIG.comp(d,e)!=0)
+		{
+			fail("FAILURE - Karatsuba a^2!=a^2");
+		}
+		z.copy(x); z.inverse(); z.mul(x); z.reduce();
+		if (!z.equals(new FP(1)))
+		{
+			fail("FAILURE - x.(1/x)!=1");
+		}
+		c.copy(a); c.invmodp(m);
+		if (!BIG.modmul(a,c,m).isunity())
+		{
+			fail("FAILURE - a.(1/a)!=1 mod m");
+		}
+		z.zero(); z.inverse();
+		if (!z.iszilch())
+		{
+			fail("FAILURE - 1/0!=0");
+		}
+		v[3].zero();
+		FP.batchInverseSafe(v,vi);
+		for (i=0;i<v.length;i++)
+		{
+			z.copy(v[i]); z.inverse();
+			if (!z.equals(vi[i]))
+			{
+				fail("FAILURE - batch 1/x!=1/x");
+			}
+		}
+		System.out.print("All tests pass\n"); 
+	}
+}
@@ -21,6 +21,8 @@ under the License.
 package org.apache.milagro.amcl.XXX;
 
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 import org.apache.milagro.amcl.RAND;
 
@@ -40,7 +42,7 @@ public class TesttimeMPIN extends TestCase
 		RAND rng=new RAND();
 
 		int i,iterations;
-		long start,elapsed;
+		long start,elapsed,mods;
 		double dur;
 
 		rng.clean();
@@ -103,6 +105,22 @@ public class TesttimeMPIN extends TestCase
 		System.out.format("G2 mul              - %8d iterations  ",iterations);
 		System.out.format(" %8.2f ms per iteration\n",dur);
 
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			W=ECP2.genmul(s);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 generator mul    - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!W.equals(PAIR.G2mul(Q,s)))
+		{
+			fail("FAILURE - genmul(s)!=sQ");
+		}
+
 		FP12 w=PAIR.ate(Q,P);
 		w=PAIR.fexp(w);
 
@@ -149,6 +167,10 @@ public class TesttimeMPIN extends TestCase
 		System.out.format("PAIRing ATE         - %8d iterations  ",iterations);
 		System.out.format(" %8.2f ms per iteration\n",dur);
 
+		mods=FP.modcount();
+		w=PAIR.ate(Q,P);
+		System.out.format("PAIRing ATE         - %8d modular reductions\n",FP.modcount()-mods);
+
 		iterations=0;
 		start=System.currentTimeMillis();
 		do {
@@ -160,6 +182,253 @@ public class TesttimeMPIN extends TestCase
 		System.out.format("PAIRing FEXP        - %8d iterations  ",iterations);
 		System.out.format(" %8.2f ms per iteration\n",dur);
 
+		BIG bx=PFCONSTANTS.CURVE_BNX;
+		FP12 gx=null;
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			gx=g.pow(bx);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("GT pow x            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			gx=g.cycpow(bx);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("GT cyclotomic pow x - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!gx.equals(g.pow(bx)) || !new FP12(1).cycpow(bx).isunity())
+		{
+			fail("FAILURE - compressed g^x!=g^x ");
+		}
+
+		ECP2 xQ=null;
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			xQ=Q.mul(bx);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 mul x            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			xQ=Q.mulByX();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 mulByX           - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!xQ.equals(Q.mul(bx)) || !G.mulnaf(PFCONSTANTS.CURVE_BNX_NAF).equals(G.mul(bx)))
+		{
+			fail("FAILURE - mulByX()!=x.Q ");
+		}
+
+		for (int wd=3;wd<=6;wd++)
+		{
+			iterations=0;
+			start=System.currentTimeMillis();
+			do {
+				xQ=Q.mul(s,wd);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("G2 mul w=%d%s         - %8d iterations  ",wd,(wd==CONFIG_CURVE.MUL_WINDOW)?"*":" ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+			if (!xQ.equals(Q.mul(s)) || !Q.mul(r,wd).is_infinity())
+			{
+				fail("FAILURE - mul(s,w)!=sQ ");
+			}
+		}
+
+/* widths outside 2..6 are refused */
+		for (int wd=-1;wd<=9;wd++)
+		{
+			if (wd>=2 && wd<=6) continue;
+			try {
+				Q.mul(s,wd);
+				fail("FAILURE - mul(s,"+wd+") accepted");
+			} catch (IllegalArgumentException x) {}
+		}
+
+/* a 64 term multi-scalar multiplication in G2, against 64 mul()s at the width above */
+		ECP2[] QK=new ECP2[64];
+		BIG[] KQ=new BIG[64];
+		for (int j=0;j<QK.length;j++)
+		{
+			QK[j]=new ECP2(Q);
+			if (j>0) QK[j].add(QK[j-1]);
+			KQ[j]=BIG.randomnum(r,rng);
+		}
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			xQ=ECP2.multiMul(QK,KQ);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 multiMul x64     - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		ECP2 sQ=new ECP2();
+		for (int j=0;j<QK.length;j++)
+			sQ.add(QK[j].mul(KQ[j]));
+		ExecutorService exm=Executors.newFixedThreadPool(2);
+		ECP2 pQ=ECP2.multiMul(QK,KQ,exm,3);
+		exm.shutdown();
+		if (!xQ.equals(sQ) || !pQ.equals(sQ))
+		{
+			fail("FAILURE - multiMul()!=sum of mul() ");
+		}
+
+/* subgroup membership by the endomorphism tests, against multiplication by the group order */
+		ECP G1=ECP.generator();
+		ECP2 G2=ECP2.generator();
+		ECP NP=new ECP();
+		ECP2 NQ=new ECP2();
+		for (int j=1;NP.is_infinity();j++)
+			NP=new ECP(new BIG(j));
+		for (int j=1;NQ.is_infinity();j++)
+			NQ=new ECP2(new FP2(j));
+		boolean mem=false;
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=PAIR.G1member(G1);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G1 member           - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=G1.mul(r).is_infinity();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G1 mul r            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=PAIR.G2member(G2);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 member           - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=G2.mul(r).is_infinity();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 mul r            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!PAIR.G1member(G1) || !PAIR.G1member(G1.mul(s)) || PAIR.G1member(new ECP()) || PAIR.G1member(NP)!=NP.mul(r).is_infinity())
+		{
+			fail("FAILURE - G1 membership ");
+		}
+		if (!PAIR.G2member(G2) || !PAIR.G2member(G2.mul(s)) || PAIR.G2member(new ECP2()) || PAIR.G2member(NQ) || NQ.mul(r).is_infinity())
+		{
+			fail("FAILURE - G2 membership ");
+		}
+
+		ECP2[] QM=new ECP2[16];
+		ECP[] PM=new ECP[16];
+		for (int j=0;j<QM.length;j++)
+		{
+			QM[j]=new ECP2(Q);
+			PM[j]=new ECP(P);
+		}
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			w=PAIR.multiAte(QM,PM);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("PAIRing multi x16   - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+/* the same on 1,2,4..32 threads, up to the number of cores */
+		ECP2[] QT=new ECP2[32];
+		ECP[] PT=new ECP[32];
+		for (int j=0;j<QT.length;j++)
+		{
+			QT[j]=new ECP2(Q);
+			PT[j]=new ECP(P);
+		}
+		int cores=Runtime.getRuntime().availableProcessors();
+		for (int nt=1;nt<=32 && nt<=cores;nt*=2)
+		{
+			ExecutorService ex=Executors.newFixedThreadPool(nt);
+			iterations=0;
+			start=System.currentTimeMillis();
+			do {
+				w=PAIR.multiAte(QT,PT,ex,nt);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			ex.shutdown();
+			dur=(double)elapsed/iterations;
+			System.out.format("PAIRing x32 %2d thrd - %8d iterations  ",nt,iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+		}
+		ExecutorService ex3=Executors.newFixedThreadPool(3);
+		w=PAIR.multiAte(QT,PT,ex3,5);
+		ex3.shutdown();
+		if (!w.equals(PAIR.multiAte(QT,PT)))
+		{
+			fail("FAILURE - parallel multi-pairing!=multi-pairing ");
+		}
+
+		G2Prepared QP=new G2Prepared(Q);
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			w=PAIR.ate(QP,P);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("PAIRing ATE (prep)  - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!PAIR.fexp(w).equals(PAIR.fexp(PAIR.ate(Q,P))))
+		{
+			fail("FAILURE - prepared e(Q,P)!=e(Q,P) ");
+		}
+
 		P.copy(G);
 		Q.copy(W);
 
@@ -189,6 +458,170 @@ public class TesttimeMPIN extends TestCase
 			fail("FAILURE - e(sQ,p)!=e(Q,P)^s ");
 		}
 
+		QM=new ECP2[3];
+		PM=new ECP[3];
+		QM[0]=new ECP2(W); PM[0]=PAIR.G1mul(G,s);
+		QM[1]=PAIR.G2mul(W,s); PM[1]=new ECP(G); PM[1].neg();
+		QM[2]=new ECP2(); PM[2]=new ECP(G);
+		g=PAIR.multiAte(QM,PM);
+		g=PAIR.fexp(g);
+
+		if (!g.isunity())
+		{
+			fail("FAILURE - e(Q,sP).e(sQ,-P).e(O,P)!=1 ");
+		}
+
+		byte[] WB=new byte[4*CONFIG_BIG.MODBYTES];
+		QM[1].toBytes(WB);
+		g=PAIR.ate2(G2Prepared.get(W),PM[0],G2Prepared.fromBytes(WB),PM[1]);
+		g=PAIR.fexp(g);
+
+		if (!g.isunity() || G2Prepared.fromBytes(WB)!=G2Prepared.fromBytes(WB))
+		{
+			fail("FAILURE - prepared e(Q,sP).e(sQ,-P)!=1 ");
+		}
+
+/* hashing to G1 and G2, try-and-increment and Shallue-van de Woestijne */
+		byte[] h=new byte[CONFIG_BIG.MODBYTES];
+		ECP HP=null;
+		ECP2 HQ=null;
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			h[iterations%h.length]++;
+			HP=ECP.mapit(h);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G1 map              - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			h[iterations%h.length]++;
+			HP=ECP.map2point(h);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G1 map (SVDW)       - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			h[iterations%h.length]++;
+			HQ=ECP2.mapit(h);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 map              - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			h[iterations%h.length]++;
+			HQ=ECP2.map2point(h);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 map (SVDW)       - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		for (i=0;i<10;i++)
+		{
+			h[i]^=(byte)(i*37+1);
+			HP=ECP.map2point(h);
+			HQ=ECP2.map2point(h);
+			if (HP.is_infinity() || new ECP(HP.getX(),HP.getY()).is_infinity() || !HP.mul(new BIG(ROM.CURVE_Order)).is_infinity())
+			{
+				fail("FAILURE - G1 map2point not in group ");
+			}
+			if (HQ.is_infinity() || new ECP2(HQ.getX(),HQ.getY()).is_infinity() || !HQ.mul(new BIG(ROM.CURVE_Order)).is_infinity())
+			{
+				fail("FAILURE - G2 map2point not in group ");
+			}
+		}
+
+		int BGS=BLS.BGS;
+		int BFS=BLS.BFS;
+		int nb=32;
+		byte[] S=new byte[BGS];
+		byte[][] SIGB=new byte[nb][BFS+1];
+		byte[][] WBB=new byte[nb][4*BFS];
+		String[] messb=new String[nb];
+		int[] resb=new int[nb];
+		for (i=0;i<nb;i++)
+		{
+			messb[i]="Message "+i;
+			BLS.KeyPairGenerate(rng,S,WBB[i]);
+			BLS.sign(SIGB[i],messb[i],S);
+		}
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			BLS.clearHashCache();
+			BLS.bls_hashit(messb[iterations%nb]);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("BLS hash to G1      - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			BLS.bls_hashit(messb[iterations%nb]);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("BLS hash (cached)   - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			BLS.verify(SIGB[iterations%nb],messb[iterations%nb],WBB[iterations%nb]);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("BLS verify          - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			BLS.verifyBatch(SIGB,messb,WBB,rng);
+			iterations+=nb;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("BLS verify batch %2d - %8d iterations  ",nb,iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (BLS.verifyBatch(SIGB,messb,WBB,rng)!=BLS.BLS_OK)
+		{
+			fail("FAILURE - batch of good BLS signatures fails ");
+		}
+		messb[7]=messb[6]; messb[20]=messb[21];
+		BLS.verifyBatch(SIGB,messb,WBB,rng,resb);
+		for (i=0;i<nb;i++)
+		{
+			if ((resb[i]==BLS.BLS_OK)!=(i!=7 && i!=20))
+			{
+				fail("FAILURE - bad BLS signatures not found by bisection ");
+			}
+		}
+
 		System.out.print("All tests pass\n"); 
 	}
 
@@ -21,6 +21,8 @@ under the License.
 package org.apache.milagro.amcl.XXX;
 
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import junit.framework.TestCase;
 import org.apache.milagro.amcl.RAND;
 
@@ -40,7 +42,7 @@ public class TesttimeMPIN192 extends TestCase
 		RAND rng=new RAND();
 
 		int i,iterations;
-		long start,elapsed;
+		long start,elapsed,mods;
 		double dur;
 
 		rng.clean();
@@ -149,6 +151,10 @@ public class TesttimeMPIN192 extends TestCase
 		System.out.format("PAIRing ATE         - %8d iterations  ",iterations);
 		System.out.format(" %8.2f ms per iteration\n",dur);
 
+		mods=FP.modcount();
+		w=PAIR192.ate(Q,P);
+		System.out.format("PAIRing ATE         - %8d modular reductions\n",FP.modcount()-mods);
+
 		iterations=0;
 		start=System.currentTimeMillis();
 		do {
@@ -160,6 +166,226 @@ public class TesttimeMPIN192 extends TestCase
 		System.out.format("PAIRing FEXP        - %8d iterations  ",iterations);
 		System.out.format(" %8.2f ms per iteration\n",dur);
 
+		BIG bx=PFCONSTANTS.CURVE_BNX;
+		FP24 gx=null;
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			gx=g.pow(bx);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("GT pow x            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			gx=g.cycpow(bx);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("GT cyclotomic pow x - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!gx.equals(g.pow(bx)) || !new FP24(1).cycpow(bx).isunity())
+		{
+			fail("FAILURE - compressed g^x!=g^x ");
+		}
+
+		ECP4 xQ=null;
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			xQ=Q.mul(bx);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 mul x            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			xQ=Q.mulByX();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 mulByX           - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!xQ.equals(Q.mul(bx)) || !G.mulnaf(PFCONSTANTS.CURVE_BNX_NAF).equals(G.mul(bx)))
+		{
+			fail("FAILURE - mulByX()!=x.Q ");
+		}
+
+		for (int wd=3;wd<=6;wd++)
+		{
+			iterations=0;
+			start=System.currentTimeMillis();
+			do {
+				xQ=Q.mul(s,wd);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			dur=(double)elapsed/iterations;
+			System.out.format("G2 mul w=%d%s         - %8d iterations  ",wd,(wd==CONFIG_CURVE.MUL_WINDOW)?"*":" ",iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+			if (!xQ.equals(Q.mul(s)) || !Q.mul(r,wd).is_infinity())
+			{
+				fail("FAILURE - mul(s,w)!=sQ ");
+			}
+		}
+
+/* a 64 term multi-scalar multiplication in G2, against 64 mul()s at the width above */
+		ECP4[] QK=new ECP4[64];
+		BIG[] KQ=new BIG[64];
+		for (int j=0;j<QK.length;j++)
+		{
+			QK[j]=new ECP4(Q);
+			if (j>0) QK[j].add(QK[j-1]);
+			KQ[j]=BIG.randomnum(r,rng);
+		}
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			xQ=ECP4.multiMul(QK,KQ);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 multiMul x64     - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		ECP4 sQ=new ECP4();
+		for (int j=0;j<QK.length;j++)
+			sQ.add(QK[j].mul(KQ[j]));
+		ExecutorService exm=Executors.newFixedThreadPool(2);
+		ECP4 pQ=ECP4.multiMul(QK,KQ,exm,3);
+		exm.shutdown();
+		if (!xQ.equals(sQ) || !pQ.equals(sQ))
+		{
+			fail("FAILURE - multiMul()!=sum of mul() ");
+		}
+
+/* subgroup membership by the endomorphism tests, against multiplication by the group order */
+		ECP G1=ECP.generator();
+		ECP4 G2=ECP4.generator();
+		ECP NP=new ECP();
+		ECP4 NQ=new ECP4();
+		for (int j=1;NP.is_infinity();j++)
+			NP=new ECP(new BIG(j));
+		for (int j=1;NQ.is_infinity();j++)
+			NQ=new ECP4(new FP4(j));
+		boolean mem=false;
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=PAIR192.G1member(G1);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G1 member           - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=G1.mul(r).is_infinity();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G1 mul r            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=PAIR192.G2member(G2);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 member           - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			mem=G2.mul(r).is_infinity();
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("G2 mul r            - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+		if (!PAIR192.G1member(G1) || !PAIR192.G1member(G1.mul(s)) || PAIR192.G1member(new ECP()) || PAIR192.G1member(NP)!=NP.mul(r).is_infinity())
+		{
+			fail("FAILURE - G1 membership ");
+		}
+		if (!PAIR192.G2member(G2) || !PAIR192.G2member(G2.mul(s)) || PAIR192.G2member(new ECP4()) || PAIR192.G2member(NQ) || NQ.mul(r).is_infinity())
+		{
+			fail("FAILURE - G2 membership ");
+		}
+
+		ECP4[] QM=new ECP4[16];
+		ECP[] PM=new ECP[16];
+		for (int j=0;j<QM.length;j++)
+		{
+			QM[j]=new ECP4(Q);
+			PM[j]=new ECP(P);
+		}
+		iterations=0;
+		start=System.currentTimeMillis();
+		do {
+			w=PAIR192.multiAte(QM,PM);
+			iterations++;
+			elapsed=(System.currentTimeMillis()-start);
+		} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+		dur=(double)elapsed/iterations;
+		System.out.format("PAIRing multi x16   - %8d iterations  ",iterations);
+		System.out.format(" %8.2f ms per iteration\n",dur);
+
+/* the same on 1,2,4..32 threads, up to the number of cores */
+		ECP4[] QT=new ECP4[32];
+		ECP[] PT=new ECP[32];
+		for (int j=0;j<QT.length;j++)
+		{
+			QT[j]=new ECP4(Q);
+			PT[j]=new ECP(P);
+		}
+		int cores=Runtime.getRuntime().availableProcessors();
+		for (int nt=1;nt<=32 && nt<=cores;nt*=2)
+		{
+			ExecutorService ex=Executors.newFixedThreadPool(nt);
+			iterations=0;
+			start=System.currentTimeMillis();
+			do {
+				w=PAIR192.multiAte(QT,PT,ex,nt);
+				iterations++;
+				elapsed=(System.currentTimeMillis()-start);
+			} while (elapsed<MIN_TIME*1000 || iterations<MIN_ITERS);
+			ex.shutdown();
+			dur=(double)elapsed/iterations;
+			System.out.format("PAIRing x32 %2d thrd - %8d iterations  ",nt,iterations);
+			System.out.format(" %8.2f ms per iteration\n",dur);
+		}
+		ExecutorService ex3=Executors.newFixedThreadPool(3);
+		w=PAIR192.multiAte(QT,PT,ex3,5);
+		ex3.shutdown();
+		if (!w.equals(PAIR192.multiAte(QT,PT)))
+		{
+			fail("FAILURE - parallel multi-pairing!=multi-pairing ");
+		}
+
 		P.copy(G);
 		Q.copy(W);
 
@@ -189,6 +415,19 @@ public class TesttimeMPIN192 extends TestCase
 			fail("FAILURE - e(sQ,p)!=e(Q,P)^s ");
 		}
 
+		QM=new ECP4[3];
+		PM=new ECP[3];
+		QM[0]=new ECP4(W); PM[0]=PAIR192.G1mul(G,s);
+		QM[1]=PAIR192.G2mul(W,s); PM[1]=new ECP(G); PM[1].neg();
+		QM[2]=new ECP4(); PM[2]=new ECP(G);
+		g=PAIR192.multiAte(QM,PM);
+		g=PAIR192.fexp(g);
+
+		if (!g.isunity())
+		{
+			fail("FAILURE - e(Q,sP).e(sQ,-P).e(O,P)!=1 ");
+		}
+
 		System.out.print("All tests pass\n"); 
 	}
 
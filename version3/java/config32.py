@@ -25,6 +25,24 @@ amclTestPath = "amcl" + slashtext + "src" + slashtext + "test" + slashtext + "ja
 chosen=[]
 cptr=0
 
+# BIG mul and sqr switch to Karatsuba at this number of limbs. TesttimeFP times the crossover -
+# schoolbook still wins at every BIG size configured below, so the default leaves it off
+karatsuba="40"
+# FP.inverse and BIG.invmodp use constant time safegcd, rather than Fermat and the binary method
+safegcd="true"
+# ECP.mul and the ECP2/ECP4/ECP8 muls use signed windows of this many bits, 2..6. A curve not listed
+# here gets 4, 5 or 6 by modulus size. TesttimeECDH and TesttimeMPIN time each width - e.g. mulwindow["NIST256"]="5"
+mulwindow={}
+
+def mul_window(tc,nbt) :
+	if tc in mulwindow :
+		return mulwindow[tc]
+	if int(nbt)>=520 :
+		return "6"
+	if int(nbt)>=300 :
+		return "5"
+	return "4"
+
 def replace(namefile,oldtext,newtext):
 	f = open(namefile,'r')
 	filedata = f.read()
@@ -50,6 +68,7 @@ def rsaset(tb,nb,base,ml) :
 	os.system(makedir+amclTestPath+slashtext+tb)  #ms
 
 	os.system(copytext+"CONFIG_BIG.java "+fpath+"CONFIG_BIG.java")
+	os.system(copytext+"SAFEGCD.java "+fpath+"SAFEGCD.java")
 	os.system(copytext+"CONFIG_FF.java "+fpath+"CONFIG_FF.java")
 	os.system(copytext+"BIG32.java "+fpath+"BIG.java")
 	os.system(copytext+"DBIG32.java "+fpath+"DBIG.java")
@@ -61,6 +80,7 @@ def rsaset(tb,nb,base,ml) :
 	os.system(copytext+"TesttimeRSA.java "+fpathTest+"TesttimeRSA.java")	#ms
 	
 	replace(fpath+"CONFIG_BIG.java","XXX",tb)
+	replace(fpath+"SAFEGCD.java","XXX",tb)
 	replace(fpath+"CONFIG_FF.java","XXX",tb)
 	replace(fpath+"BIG.java","XXX",tb)
 	replace(fpath+"DBIG.java","XXX",tb)
@@ -73,6 +93,8 @@ def rsaset(tb,nb,base,ml) :
 
 	replace(fpath+"CONFIG_BIG.java","@NB@",nb)
 	replace(fpath+"CONFIG_BIG.java","@BASE@",base)
+	replace(fpath+"CONFIG_BIG.java","@KT@",karatsuba)
+	replace(fpath+"CONFIG_BIG.java","@SG@",safegcd)
 
 	replace(fpath+"CONFIG_FF.java","@ML@",ml);
 
@@ -90,30 +112,40 @@ def curveset(tc,nb,base,nbt,m8,mt,ct,pf,stw,sx,cs) :
 	os.system(makedir+amclTestPath+slashtext+tc)  #ms
 
 	os.system(copytext+"CONFIG_BIG.java "+fpath+"CONFIG_BIG.java")
+	os.system(copytext+"SAFEGCD.java "+fpath+"SAFEGCD.java")
 	os.system(copytext+"CONFIG_FIELD.java "+fpath+"CONFIG_FIELD.java")
 	os.system(copytext+"CONFIG_CURVE.java "+fpath+"CONFIG_CURVE.java")
 	os.system(copytext+"BIG32.java "+fpath+"BIG.java")
 	os.system(copytext+"DBIG32.java "+fpath+"DBIG.java")
 	os.system(copytext+"FP32.java "+fpath+"FP.java")
+	os.system(copytext+"FPScratch.java "+fpath+"FPScratch.java")
+	os.system(copytext+"CONSTANTS.java "+fpath+"CONSTANTS.java")
 	os.system(copytext+"ECP.java "+fpath+"ECP.java")
 	os.system(copytext+"ECDH.java "+fpath+"ECDH.java")
 	os.system(copytext+"ROM_"+tc+"_32.java "+fpath+"ROM.java")
 	os.system(copytext+"TestECDH.java "+fpathTest+"TestECDH.java")	#ms
 	os.system(copytext+"TesttimeECDH.java "+fpathTest+"TesttimeECDH.java")	#ms
+	os.system(copytext+"TesttimeFP.java "+fpathTest+"TesttimeFP.java")	#ms
 
-	replace(fpath+"CONFIG_BIG.java","XXX",tc)	
+	replace(fpath+"CONFIG_BIG.java","XXX",tc)
+	replace(fpath+"SAFEGCD.java","XXX",tc)	
 	replace(fpath+"CONFIG_FIELD.java","XXX",tc)	
 	replace(fpath+"CONFIG_CURVE.java","XXX",tc)	
 	replace(fpath+"BIG.java","XXX",tc)
 	replace(fpath+"DBIG.java","XXX",tc)
 	replace(fpath+"FP.java","XXX",tc)
+	replace(fpath+"FPScratch.java","XXX",tc)
+	replace(fpath+"CONSTANTS.java","XXX",tc)
 	replace(fpath+"ECP.java","XXX",tc)
 	replace(fpath+"ECDH.java","XXX",tc)
 	replace(fpathTest+"TestECDH.java","XXX",tc)  #ms
 	replace(fpathTest+"TesttimeECDH.java","XXX",tc)  #ms
+	replace(fpathTest+"TesttimeFP.java","XXX",tc)  #ms
 
 	replace(fpath+"CONFIG_BIG.java","@NB@",nb)
 	replace(fpath+"CONFIG_BIG.java","@BASE@",base)
+	replace(fpath+"CONFIG_BIG.java","@KT@",karatsuba)
+	replace(fpath+"CONFIG_BIG.java","@SG@",safegcd)
 
 	replace(fpath+"CONFIG_FIELD.java","@NBT@",nbt)
 	replace(fpath+"CONFIG_FIELD.java","@M8@",m8)
@@ -133,6 +165,7 @@ def curveset(tc,nb,base,nbt,m8,mt,ct,pf,stw,sx,cs) :
 
 	replace(fpath+"CONFIG_CURVE.java","@ST@",stw)
 	replace(fpath+"CONFIG_CURVE.java","@SX@",sx)
+	replace(fpath+"CONFIG_CURVE.java","@MW@",mul_window(tc,nbt))
 
 	if cs == "128" :
 		replace(fpath+"CONFIG_CURVE.java","@HT@","32")
@@ -147,15 +180,18 @@ def curveset(tc,nb,base,nbt,m8,mt,ct,pf,stw,sx,cs) :
 	if pf != "NOT" :
 		os.system(copytext+"FP2.java "+fpath+"FP2.java")
 		os.system(copytext+"FP4.java "+fpath+"FP4.java")
+		os.system(copytext+"PFCONSTANTS.java "+fpath+"PFCONSTANTS.java")
 
 		replace(fpath+"FP2.java","XXX",tc)
 		replace(fpath+"FP4.java","XXX",tc)
+		replace(fpath+"PFCONSTANTS.java","XXX",tc)
 
 		if cs == "128" :
 
 			os.system(copytext+"ECP2.java "+fpath+"ECP2.java")
 			os.system(copytext+"FP12.java "+fpath+"FP12.java")
 			os.system(copytext+"PAIR.java "+fpath+"PAIR.java")
+			os.system(copytext+"G2Prepared.java "+fpath+"G2Prepared.java")
 			os.system(copytext+"MPIN.java "+fpath+"MPIN.java")
 			os.system(copytext+"BLS.java "+fpath+"BLS.java")
 			os.system(copytext+"TestMPIN.java "+fpathTest+"TestMPIN.java")	#ms
@@ -165,6 +201,7 @@ def curveset(tc,nb,base,nbt,m8,mt,ct,pf,stw,sx,cs) :
 			replace(fpath+"FP12.java","XXX",tc)
 			replace(fpath+"ECP2.java","XXX",tc)
 			replace(fpath+"PAIR.java","XXX",tc)
+			replace(fpath+"G2Prepared.java","XXX",tc)
 			replace(fpath+"MPIN.java","XXX",tc)
 			replace(fpath+"BLS.java","XXX",tc)
 			replace(fpathTest+"TestMPIN.java","XXX",tc)  #ms